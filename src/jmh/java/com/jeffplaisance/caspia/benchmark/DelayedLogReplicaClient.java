@@ -0,0 +1,83 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.benchmark;
+
+import com.jeffplaisance.caspia.log.LogReplicaClient;
+import com.jeffplaisance.caspia.log.LogReplicaState;
+import com.jeffplaisance.caspia.log.LogReplicaWrite;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * adds a fixed delay in front of every call to simulate network and storage latency
+ */
+public final class DelayedLogReplicaClient implements LogReplicaClient {
+
+    private final LogReplicaClient delegate;
+    private final long delayNs;
+
+    public DelayedLogReplicaClient(LogReplicaClient delegate, long delayNs) {
+        this.delegate = delegate;
+        this.delayNs = delayNs;
+    }
+
+    private void delay() {
+        if (delayNs > 0) LockSupport.parkNanos(delayNs);
+    }
+
+    @Override
+    public LogReplicaState read(long index) throws Exception {
+        delay();
+        return delegate.read(index);
+    }
+
+    @Override
+    public LogReplicaState readMetadata(long index) throws Exception {
+        delay();
+        return delegate.readMetadata(index);
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        delay();
+        return delegate.compareAndSetProposal(id, proposal, expect);
+    }
+
+    @Override
+    public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+        delay();
+        return delegate.writeAtomic(id, update, expect_absent, expect);
+    }
+
+    @Override
+    public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        delay();
+        return delegate.writeBatch(writes);
+    }
+
+    @Override
+    public long readLastIndex() throws Exception {
+        delay();
+        return delegate.readLastIndex();
+    }
+}
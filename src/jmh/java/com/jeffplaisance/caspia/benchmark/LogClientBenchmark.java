@@ -0,0 +1,110 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.benchmark;
+
+import com.jeffplaisance.caspia.log.LogClient;
+import com.jeffplaisance.caspia.log.LogReplicaClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.jeffplaisance.caspia.benchmark.Retries.retry;
+
+/**
+ * LogClient writes and reads. the slow path and recovery variants run in forks with the corresponding LogClient
+ * optimization disabled so that every operation takes the full propose and accept path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogClientBenchmark {
+
+    private static final int READ_ENTRIES = 1024;
+
+    @Param({Replicas.LOCAL, Replicas.H2})
+    public String replicaType;
+
+    @Param({"3"})
+    public int replicaCount;
+
+    @Param({"0", "100"})
+    public long latencyMicros;
+
+    @Param({"128"})
+    public int valueSize;
+
+    private LogClient writer;
+    private LogClient reader;
+    private byte[] value;
+    private long nextWriteIndex;
+    private long nextReadIndex;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        final List<LogReplicaClient> replicas = Replicas.logReplicas(replicaType, replicaCount, latencyMicros);
+        writer = new LogClient(replicas);
+        value = new byte[valueSize];
+        for (long i = 1; i <= READ_ENTRIES; i++) {
+            final long index = i;
+            retry(() -> writer.write(index, value));
+        }
+        reader = new LogClient(replicas);
+        nextWriteIndex = READ_ENTRIES + 1;
+        nextReadIndex = 1;
+    }
+
+    @Benchmark
+    public boolean writeFastPath() throws Exception {
+        final long index = nextWriteIndex++;
+        return retry(() -> writer.write(index, value));
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcom.jeffplaisance.caspia.log.disableFastPath=true")
+    public boolean writeSlowPath() throws Exception {
+        final long index = nextWriteIndex++;
+        return retry(() -> writer.write(index, value));
+    }
+
+    @Benchmark
+    public byte[] readOneRoundTrip() throws Exception {
+        final long index = nextReadIndex();
+        return retry(() -> reader.read(index));
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcom.jeffplaisance.caspia.log.disableOneRoundTripRead=true")
+    public byte[] readRecovery() throws Exception {
+        final long index = nextReadIndex();
+        return retry(() -> reader.read(index));
+    }
+
+    private long nextReadIndex() {
+        final long ret = nextReadIndex;
+        nextReadIndex = ret == READ_ENTRIES ? 1 : ret+1;
+        return ret;
+    }
+
+    @Benchmark
+    public long readLastIndex() throws Exception {
+        return retry(reader::readLastIndex);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.benchmark;
+
+import com.jeffplaisance.caspia.common.Quorum;
+import com.jeffplaisance.caspia.common.ThrowingFunction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * overhead of Quorum.broadcast itself, every replica answers immediately
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuorumBenchmark {
+
+    @Param({"3", "5"})
+    public int replicaCount;
+
+    private List<Integer> replicas;
+    private final ThrowingFunction<Integer, Integer, RuntimeException> identity = x -> x;
+
+    @Setup
+    public void setup() {
+        replicas = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            replicas.add(i);
+        }
+    }
+
+    @Benchmark
+    public List<Integer> broadcastMajority() throws Exception {
+        return Quorum.broadcast(replicas, replicaCount - (replicaCount-1)/2, identity, -1);
+    }
+
+    @Benchmark
+    public List<Integer> broadcastAll() throws Exception {
+        return Quorum.broadcast(replicas, replicaCount, identity, -1);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.benchmark;
+
+import com.google.common.primitives.Longs;
+import com.jeffplaisance.caspia.common.Transcoder;
+import com.jeffplaisance.caspia.register.RegisterClient;
+import com.jeffplaisance.caspia.register.RegisterReplicaClient;
+import com.jeffplaisance.caspia.register.ReplicaUpdate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.jeffplaisance.caspia.benchmark.Retries.retry;
+
+/**
+ * RegisterClient fast path writes and reconfiguration. replica 4 is alternately added to and removed from the quorum
+ * {1, 2, 3} in the reconfiguration benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegisterClientBenchmark {
+
+    private static final Transcoder<Long> LONG_TRANSCODER = new Transcoder<Long>() {
+        @Override
+        public byte[] toBytes(Long l) {
+            return Longs.toByteArray(l);
+        }
+
+        @Override
+        public Long fromBytes(byte[] bytes) {
+            return Longs.fromByteArray(bytes);
+        }
+    };
+
+    @Param({Replicas.LOCAL, Replicas.H2})
+    public String replicaType;
+
+    @Param({"0", "100"})
+    public long latencyMicros;
+
+    private RegisterClient<Long> client;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        final ConcurrentMap<Long, RegisterReplicaClient> replicas = new ConcurrentHashMap<>();
+        client = new RegisterClient<>(
+                Arrays.asList(1L, 2L, 3L),
+                replicaId -> replicas.computeIfAbsent(replicaId, x -> Replicas.registerReplica(replicaType, x, latencyMicros)),
+                LONG_TRANSCODER,
+                "benchmark");
+        retry(() -> client.write(x -> 0L));
+    }
+
+    @Benchmark
+    public Long writeFastPath() throws Exception {
+        return retry(() -> client.write(x -> x + 1));
+    }
+
+    @Benchmark
+    public ReplicaUpdate reconfigure() throws Exception {
+        return retry(() -> client.modifyQuorum(replicas -> replicas.contains(4L) ? ReplicaUpdate.remove(4) : ReplicaUpdate.add(4)));
+    }
+}
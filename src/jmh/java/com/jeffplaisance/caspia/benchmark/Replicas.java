@@ -0,0 +1,91 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.benchmark;
+
+import com.jeffplaisance.caspia.log.JDBCLogReplicaClient;
+import com.jeffplaisance.caspia.log.LocalLogReplicaClient;
+import com.jeffplaisance.caspia.log.LogReplicaClient;
+import com.jeffplaisance.caspia.register.JDBCRegisterReplicaClient;
+import com.jeffplaisance.caspia.register.LocalRegisterReplicaClient;
+import com.jeffplaisance.caspia.register.RegisterReplicaClient;
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * replica factories shared by the benchmarks. "local" replicas are the in-memory test replicas, "h2" replicas are the
+ * JDBC replicas backed by an embedded in-memory H2 database in MySQL mode.
+ */
+public final class Replicas {
+
+    public static final String LOCAL = "local";
+    public static final String H2 = "h2";
+
+    private Replicas() {}
+
+    public static List<LogReplicaClient> logReplicas(String type, int count, long latencyMicros) throws SQLException {
+        final List<LogReplicaClient> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final LogReplicaClient replica;
+            if (LOCAL.equals(type)) {
+                replica = new LocalLogReplicaClient(0, 0, 0);
+            } else if (H2.equals(type)) {
+                replica = new JDBCLogReplicaClient(h2("create table log01 (id bigint not null primary key, proposal int not null, accepted int not null, val longblob)"), "log01");
+            } else {
+                throw new IllegalArgumentException("unknown replica type "+type);
+            }
+            ret.add(new DelayedLogReplicaClient(replica, TimeUnit.MICROSECONDS.toNanos(latencyMicros)));
+        }
+        return ret;
+    }
+
+    public static RegisterReplicaClient registerReplica(String type, long replicaId, long latencyMicros) {
+        final RegisterReplicaClient replica;
+        if (LOCAL.equals(type)) {
+            replica = new LocalRegisterReplicaClient(replicaId);
+        } else if (H2.equals(type)) {
+            try {
+                replica = new JDBCRegisterReplicaClient(h2("create table registers (id varchar(255) not null primary key, proposal bigint not null, accepted bigint not null, val longblob, replicas blob, quorum_modified tinyint not null, changed_replica bigint not null)"), "registers", replicaId);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            throw new IllegalArgumentException("unknown replica type "+type);
+        }
+        return new DelayedRegisterReplicaClient(replica, TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+    }
+
+    private static DataSource h2(String ddl) throws SQLException {
+        final BasicDataSource ds = new BasicDataSource();
+        ds.setDriverClassName("org.h2.Driver");
+        ds.setUrl("jdbc:h2:mem:"+UUID.randomUUID()+";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (
+                final Connection c = ds.getConnection();
+                final Statement s = c.createStatement()
+        ) {
+            s.execute(ddl);
+        }
+        return ds;
+    }
+}
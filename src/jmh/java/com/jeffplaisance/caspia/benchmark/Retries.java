@@ -0,0 +1,40 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.benchmark;
+
+import java.util.concurrent.Callable;
+
+public final class Retries {
+
+    private static final int MAX_ATTEMPTS = 100;
+
+    private Retries() {}
+
+    /**
+     * the clients leave retrying to the caller. conflicts with stragglers from earlier rounds are retried here so that
+     * their cost shows up in the measurement instead of as a failed benchmark.
+     */
+    public static <T> T retry(Callable<T> callable) throws Exception {
+        for (int i = 1; ; i++) {
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                if (i >= MAX_ATTEMPTS) throw e;
+            }
+        }
+    }
+}
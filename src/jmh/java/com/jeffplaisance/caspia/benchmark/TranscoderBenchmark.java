@@ -0,0 +1,119 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.benchmark;
+
+import com.google.common.base.Strings;
+import com.jeffplaisance.caspia.common.IntArrayTranscoder;
+import com.jeffplaisance.caspia.common.NonDelimitedStringTranscoder;
+import com.jeffplaisance.caspia.common.VarLongArrayTranscoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranscoderBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private final NonDelimitedStringTranscoder stringTranscoder = new NonDelimitedStringTranscoder();
+    private final IntArrayTranscoder intArrayTranscoder = new IntArrayTranscoder();
+    private final VarLongArrayTranscoder varLongArrayTranscoder = new VarLongArrayTranscoder();
+    private String string;
+    private byte[] stringBytes;
+    private int[] ints;
+    private byte[] intBytes;
+    private long[] longs;
+    private byte[] varLongBytes;
+    // reused destination for the encode benchmarks, large enough for any value
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        string = Strings.repeat("x", size);
+        stringBytes = stringTranscoder.toBytes(string);
+        // size is the number of elements for the array benchmarks. mostly small values, as in counters
+        final Random random = new Random(0);
+        ints = new int[size];
+        longs = new long[size];
+        for (int i = 0; i < size; i++) {
+            ints[i] = random.nextInt();
+            longs[i] = random.nextInt(1000) - 500;
+        }
+        intBytes = intArrayTranscoder.toBytes(ints);
+        varLongBytes = varLongArrayTranscoder.toBytes(longs);
+        buffer = ByteBuffer.allocate(size * 10);
+    }
+
+    @Benchmark
+    public byte[] stringToBytes() {
+        return stringTranscoder.toBytes(string);
+    }
+
+    @Benchmark
+    public String stringFromBytes() {
+        return stringTranscoder.fromBytes(stringBytes);
+    }
+
+    @Benchmark
+    public ByteBuffer stringEncode() {
+        buffer.clear();
+        stringTranscoder.encode(string, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] intArrayToBytes() {
+        return intArrayTranscoder.toBytes(ints);
+    }
+
+    @Benchmark
+    public ByteBuffer intArrayEncode() {
+        buffer.clear();
+        intArrayTranscoder.encode(ints, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public int[] intArrayFromBytes() {
+        return intArrayTranscoder.fromBytes(intBytes);
+    }
+
+    @Benchmark
+    public byte[] varLongArrayToBytes() {
+        return varLongArrayTranscoder.toBytes(longs);
+    }
+
+    @Benchmark
+    public ByteBuffer varLongArrayEncode() {
+        buffer.clear();
+        varLongArrayTranscoder.encode(longs, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public long[] varLongArrayFromBytes() {
+        return varLongArrayTranscoder.fromBytes(varLongBytes);
+    }
+}
@@ -0,0 +1,5 @@
+CREATE TABLE `chunks` (
+  `hash` binary(32) NOT NULL,
+  `val` longblob NOT NULL,
+  PRIMARY KEY (`hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8
\ No newline at end of file
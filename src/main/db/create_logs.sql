@@ -0,0 +1,8 @@
+CREATE TABLE `logs` (
+  `log_id` bigint(20) NOT NULL,
+  `id` bigint(20) NOT NULL,
+  `proposal` int(11) NOT NULL,
+  `accepted` int(11) NOT NULL,
+  `val` longblob DEFAULT NULL,
+  PRIMARY KEY (`log_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8
\ No newline at end of file
@@ -0,0 +1,39 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.chunk;
+
+import javax.annotation.Nullable;
+
+/**
+ * immutable storage for chunks of large values, keyed by the SHA-256 hash of their contents. since a key determines
+ * its contents, chunk stores need no consensus: a chunk written to enough stores can be read from any of them.
+ */
+public interface ChunkStore {
+
+    /**
+     * stores a chunk. storing a chunk which is already present has no effect.
+     * @param hash the SHA-256 hash of the chunk
+     * @param chunk the bytes of the chunk are chunk[offset] to chunk[offset+length-1]
+     */
+    void put(byte[] hash, byte[] chunk, int offset, int length) throws Exception;
+
+    /**
+     * @param hash the SHA-256 hash of the chunk
+     * @return the chunk or null if this store does not have it
+     */
+    @Nullable byte[] get(byte[] hash) throws Exception;
+}
@@ -0,0 +1,214 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.chunk;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.jeffplaisance.caspia.common.Base;
+import com.jeffplaisance.caspia.common.Broadcaster;
+import com.jeffplaisance.caspia.common.Quorum;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * stores values too large to go through consensus as content addressed chunks. {@link #write(InputStream)} splits a
+ * value into chunks, writes each chunk to a quorum of the chunk stores and returns a small manifest listing the chunk
+ * hashes. only the manifest is written to a log or register, so replicas never hold the value itself and neither
+ * writers nor readers ever hold more than one chunk of it in memory. {@link #read(byte[])} streams the value back
+ * from the manifest.
+ * <p>
+ * chunks of values whose manifest is never committed, for example because a write to the log lost the race for its
+ * index, remain in the chunk stores. chunks are shared by every value containing them, so they can only be removed by
+ * a collector which knows every live manifest.
+ */
+@ThreadSafe
+public final class ChunkedValues {
+
+    private static final HashFunction HASH = Hashing.sha256();
+    private static final int HASH_LENGTH = 32;
+    private static final byte VERSION = 1;
+
+    private final List<ChunkStore> stores;
+    private final int n;
+    private final int f;
+    private final int chunkSize;
+    private final Broadcaster broadcaster;
+
+    public ChunkedValues(List<? extends ChunkStore> stores) {
+        this(stores, 4 << 20, Quorum.broadcaster());
+    }
+
+    /**
+     * @param stores the chunk stores. each chunk is written to a majority of them.
+     * @param chunkSize the size of every chunk but the last, which bounds the memory used per value by readers and
+     * writers
+     * @param broadcaster sends chunks to the stores
+     */
+    public ChunkedValues(List<? extends ChunkStore> stores, int chunkSize, Broadcaster broadcaster) {
+        Preconditions.checkArgument(!stores.isEmpty());
+        Preconditions.checkArgument(chunkSize > 0);
+        this.stores = new ArrayList<>(stores);
+        this.n = stores.size();
+        this.f = Base.lessThanHalf(n);
+        this.chunkSize = chunkSize;
+        this.broadcaster = broadcaster;
+    }
+
+    /**
+     * @param value the value, read to the end but not closed
+     * @return the manifest for value
+     * @throws Exception if value could not be read or a chunk could not be written to a quorum of stores
+     */
+    public byte[] write(InputStream value) throws Exception {
+        final ByteArrayDataOutput hashes = ByteStreams.newDataOutput();
+        long length = 0;
+        int count = 0;
+        while (true) {
+            // a store which has not responded by the time a quorum has may still be reading the chunk, so chunks are
+            // never reused
+            final byte[] chunk = new byte[chunkSize];
+            final int read = ByteStreams.read(value, chunk, 0, chunkSize);
+            if (read == 0) break;
+            final byte[] hash = HASH.hashBytes(chunk, 0, read).asBytes();
+            broadcaster.broadcast(stores, n-f, store -> {
+                store.put(hash, chunk, 0, read);
+                return Boolean.TRUE;
+            }, Boolean.FALSE, Boolean.TRUE::equals);
+            hashes.write(hash);
+            length += read;
+            count++;
+            if (read < chunkSize) break;
+        }
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput(17 + count * HASH_LENGTH);
+        out.writeByte(VERSION);
+        out.writeLong(length);
+        out.writeInt(chunkSize);
+        out.writeInt(count);
+        out.write(hashes.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * @param manifest a manifest returned by {@link #write(InputStream)}
+     * @return the value. chunks are fetched lazily, each from the first store which has it, and verified against
+     * their hash.
+     */
+    public InputStream read(byte[] manifest) {
+        return new ChunkInputStream(new Manifest(manifest));
+    }
+
+    /**
+     * @param manifest a manifest returned by {@link #write(InputStream)}
+     * @return the length of the value in bytes
+     */
+    public static long getLength(byte[] manifest) {
+        return new Manifest(manifest).length;
+    }
+
+    private byte[] getChunk(Manifest manifest, int index) throws IOException {
+        final byte[] hash = manifest.hashes[index];
+        final int expectedLength = (int) Math.min(manifest.chunkSize, manifest.length - (long) index * manifest.chunkSize);
+        Exception firstError = null;
+        // start at a different store for each chunk to spread reads over the stores
+        for (int i = 0; i < n; i++) {
+            final ChunkStore store = stores.get((index + i) % n);
+            try {
+                final byte[] chunk = store.get(hash);
+                if (chunk != null && chunk.length == expectedLength && Arrays.equals(HASH.hashBytes(chunk).asBytes(), hash)) {
+                    return chunk;
+                }
+            } catch (Exception e) {
+                if (firstError == null) firstError = e;
+            }
+        }
+        throw new IOException("chunk "+index+" of "+manifest.hashes.length+" not found", firstError);
+    }
+
+    private static final class Manifest {
+        private final long length;
+        private final int chunkSize;
+        private final byte[][] hashes;
+
+        private Manifest(byte[] manifest) {
+            final ByteArrayDataInput in = ByteStreams.newDataInput(manifest);
+            final byte version = in.readByte();
+            Preconditions.checkArgument(version == VERSION, "unknown manifest version %s", version);
+            length = in.readLong();
+            chunkSize = in.readInt();
+            hashes = new byte[in.readInt()][HASH_LENGTH];
+            for (byte[] hash : hashes) {
+                in.readFully(hash);
+            }
+        }
+    }
+
+    private final class ChunkInputStream extends InputStream {
+        private final Manifest manifest;
+        private int nextChunk = 0;
+        private byte[] chunk = new byte[0];
+        private int position = 0;
+
+        private ChunkInputStream(Manifest manifest) {
+            this.manifest = manifest;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == chunk.length) {
+                if (nextChunk == manifest.hashes.length) return false;
+                chunk = getChunk(manifest, nextChunk++);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            final int read = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - position;
+        }
+
+        @Override
+        public void close() {
+            chunk = new byte[0];
+            position = 0;
+            nextChunk = manifest.hashes.length;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.chunk;
+
+import com.google.common.io.ByteStreams;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * chunk store backed by a table with a binary(32) hash primary key and a longblob value, see
+ * src/main/db/create_chunks.sql. chunks are streamed to and from the database.
+ */
+public final class JDBCChunkStore implements ChunkStore {
+
+    private final DataSource ds;
+    private final String table;
+    private boolean enabled = true;
+
+    public JDBCChunkStore(DataSource ds, String table) {
+        this.ds = ds;
+        this.table = table;
+    }
+
+    @Override
+    public void put(byte[] hash, byte[] chunk, int offset, int length) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                final PreparedStatement ps = c.prepareStatement("insert ignore into "+table+" (hash, val) values (?, ?)")
+        ) {
+            ps.setBytes(1, hash);
+            ps.setBinaryStream(2, new ByteArrayInputStream(chunk, offset, length), length);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public @Nullable byte[] get(byte[] hash) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                final PreparedStatement ps = c.prepareStatement("select val from "+table+" where hash = ?")
+        ) {
+            ps.setBytes(1, hash);
+            try (final ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                try (final InputStream in = rs.getBinaryStream(1)) {
+                    return ByteStreams.toByteArray(in);
+                }
+            }
+        }
+    }
+
+    public boolean setEnabled(boolean enabled) {
+        return this.enabled = enabled;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.chunk;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public final class LocalChunkStore implements ChunkStore {
+
+    private final ConcurrentMap<ByteBuffer, byte[]> chunks = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(byte[] hash, byte[] chunk, int offset, int length) {
+        chunks.computeIfAbsent(ByteBuffer.wrap(hash.clone()), k -> Arrays.copyOfRange(chunk, offset, offset + length));
+    }
+
+    @Override
+    public @Nullable byte[] get(byte[] hash) {
+        final byte[] chunk = chunks.get(ByteBuffer.wrap(hash));
+        return chunk == null ? null : chunk.clone();
+    }
+}
@@ -16,6 +16,7 @@ limitations under the License.
 
 package com.jeffplaisance.caspia.common;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.List;
@@ -33,6 +34,15 @@ public final class Base {
         return (n-1)>>>1;
     }
 
+    /**
+     * @return the bytes between the position and the limit of buffer, without changing its position
+     */
+    public static byte[] toByteArray(ByteBuffer buffer) {
+        final byte[] ret = new byte[buffer.remaining()];
+        buffer.duplicate().get(ret);
+        return ret;
+    }
+
     public static <T> Stream<T> toStream(Optional<T> optional) {
         return optional.map(Stream::of).orElseGet(Stream::empty);
     }
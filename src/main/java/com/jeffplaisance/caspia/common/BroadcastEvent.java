@@ -0,0 +1,59 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * flight recorder event for one call to {@link Quorum#broadcast2}. the duration is the time until a quorum responded
+ * or the broadcast failed, not including cancelling the stragglers.
+ */
+@Name("com.jeffplaisance.caspia.Broadcast")
+@Label("Quorum Broadcast")
+@Category("Caspia")
+@StackTrace(false)
+final class BroadcastEvent extends jdk.jfr.Event {
+
+    static final EventType TYPE = EventType.getEventType(BroadcastEvent.class);
+
+    @Label("Replicas")
+    int replicas;
+
+    @Label("Recipients")
+    @Description("replicas the broadcast was sent to")
+    int recipients;
+
+    @Label("Unavailable")
+    @Description("replicas skipped because their circuit breaker rejected calls")
+    int unavailable;
+
+    @Label("Quorum Size")
+    int quorumSize;
+
+    @Label("Successes")
+    @Description("replicas which responded without an error before the broadcast returned")
+    int successes;
+
+    @Label("Cancelled")
+    @Description("stragglers which were still running when the broadcast returned")
+    int cancelled;
+}
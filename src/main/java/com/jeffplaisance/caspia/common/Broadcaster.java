@@ -0,0 +1,67 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * sends a request to a set of replicas and waits for a quorum of them to respond. {@link Quorum#broadcaster()} does
+ * this on a thread pool, other implementations exist to run clients on a simulated network.
+ */
+public interface Broadcaster {
+
+    /**
+     * @param replicas the replicas
+     * @param minSuccessful the number of successful responses to wait for
+     * @param functions the request for each replica in replicas, empty to skip a replica
+     * @param failureResponse returned in place of the response of each replica which did not respond or threw
+     * @param successful whether a response is successful. unsuccessful responses, such as a failed compare and set
+     * from a replica which missed the previous round, don't end the broadcast so that a quorum of successful responses
+     * from slower replicas is not cut short by fast failures.
+     * @return the response of each replica in replicas. returns once minSuccessful responses were successful or every
+     * replica has responded.
+     * @throws Exception if fewer than minSuccessful replicas responded without throwing
+     */
+    <A, R, E extends Exception> List<R> broadcast2(List<A> replicas, int minSuccessful, List<Optional<ThrowingFunction<A, R, E>>> functions, R failureResponse, Predicate<? super R> successful) throws Exception;
+
+    /**
+     * broadcast in which every response is successful
+     */
+    default <A, R, E extends Exception> List<R> broadcast2(List<A> replicas, int minSuccessful, List<Optional<ThrowingFunction<A, R, E>>> functions, R failureResponse) throws Exception {
+        return broadcast2(replicas, minSuccessful, functions, failureResponse, result -> true);
+    }
+
+    default <A, R, E extends Exception> List<R> broadcast(List<A> replicas, int minSuccessful, ThrowingFunction<A, R, E> function, R failureResponse) throws Exception {
+        return broadcast(replicas, minSuccessful, Collections.nCopies(replicas.size(), function), failureResponse);
+    }
+
+    default <A, R, E extends Exception> List<R> broadcast(List<A> replicas, int minSuccessful, List<ThrowingFunction<A, R, E>> functions, R failureResponse) throws Exception {
+        return broadcast2(replicas, minSuccessful, functions.stream().map(Optional::of).collect(Collectors.toList()), failureResponse);
+    }
+
+    default <A, R, E extends Exception> List<R> broadcast(List<A> replicas, int minSuccessful, ThrowingFunction<A, R, E> function, R failureResponse, Predicate<? super R> successful) throws Exception {
+        return broadcast(replicas, minSuccessful, Collections.nCopies(replicas.size(), function), failureResponse, successful);
+    }
+
+    default <A, R, E extends Exception> List<R> broadcast(List<A> replicas, int minSuccessful, List<ThrowingFunction<A, R, E>> functions, R failureResponse, Predicate<? super R> successful) throws Exception {
+        return broadcast2(replicas, minSuccessful, functions.stream().map(Optional::of).collect(Collectors.toList()), failureResponse, successful);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a transcoder which encodes into and decodes from caller supplied buffers, so that encoding a value allocates nothing
+ * but the destination and decoding reads straight from a slice of a larger buffer such as a register's delta chain.
+ * {@link #toBytes(Object)} and {@link #fromBytes(byte[])} are implemented in terms of the buffer methods and allocate
+ * exactly one array.
+ */
+public interface BufferTranscoder<T> extends Transcoder<T> {
+
+    /**
+     * @param t the value
+     * @return the exact number of bytes {@link #encode(Object, ByteBuffer)} writes for t
+     */
+    int encodedSize(T t);
+
+    /**
+     * writes the encoding of t at the position of out and advances the position past it
+     * @param t the value
+     * @param out the destination, with at least {@link #encodedSize(Object)} bytes remaining
+     */
+    void encode(T t, ByteBuffer out);
+
+    /**
+     * @param in the encoding of a value is the bytes between the position and the limit of in. the position of in is
+     * unspecified afterwards.
+     * @return the value
+     */
+    T decode(ByteBuffer in);
+
+    @Override
+    default byte[] toBytes(T t) {
+        final byte[] bytes = new byte[encodedSize(t)];
+        encode(t, ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    @Override
+    default T fromBytes(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+}
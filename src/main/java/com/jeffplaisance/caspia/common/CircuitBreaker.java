@@ -0,0 +1,207 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * health of one replica, shared by every client using the replica. the breaker opens after a number of consecutive
+ * calls fail or take longer than the slow call threshold. while it is open calls fail immediately instead of tying up
+ * a thread and a connection on a replica which is unlikely to answer in time, and {@link Quorum} does not send
+ * requests to the replica at all. once the open duration has passed a single probe call is let through, which closes
+ * the breaker if it succeeds and reopens it otherwise. independently of its state the breaker limits the number of
+ * calls in flight to the replica so that a replica which slows down can't absorb an unbounded number of threads.
+ * <p>
+ * replica clients are guarded by wrapping them in CircuitBreakingLogReplicaClient or
+ * CircuitBreakingRegisterReplicaClient.
+ */
+@ThreadSafe
+public final class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    /**
+     * implemented by replica clients guarded by a circuit breaker, and by decorators of such clients
+     */
+    public interface Guarded {
+        /**
+         * @return the breaker guarding this replica, null if it is not guarded
+         */
+        @Nullable CircuitBreaker getCircuitBreaker();
+    }
+
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final int maxInFlight;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long openedAt;
+
+    public CircuitBreaker() {
+        this(5, 1000, 64, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failed or slow calls which opens the breaker
+     * @param slowCall calls which take at least this long count as failures
+     * @param maxInFlight the maximum number of concurrent calls to the replica
+     * @param open how long the breaker stays open before a probe call is let through
+     * @param unit the unit of slowCall and open
+     */
+    public CircuitBreaker(int failureThreshold, long slowCall, int maxInFlight, long open, TimeUnit unit) {
+        this(failureThreshold, slowCall, maxInFlight, open, unit, System::nanoTime);
+    }
+
+    public CircuitBreaker(int failureThreshold, long slowCall, int maxInFlight, long open, TimeUnit unit, LongSupplier nanoClock) {
+        Preconditions.checkArgument(failureThreshold > 0);
+        Preconditions.checkArgument(slowCall > 0);
+        Preconditions.checkArgument(maxInFlight > 0);
+        Preconditions.checkArgument(open >= 0);
+        this.failureThreshold = failureThreshold;
+        this.slowCallNanos = unit.toNanos(slowCall);
+        this.maxInFlight = maxInFlight;
+        this.openNanos = unit.toNanos(open);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param replica a replica client
+     * @return false if replica is guarded by a breaker which would reject a call right now
+     */
+    public static boolean isAvailable(Object replica) {
+        if (!(replica instanceof Guarded)) return true;
+        final CircuitBreaker breaker = ((Guarded) replica).getCircuitBreaker();
+        return breaker == null || breaker.isAvailable();
+    }
+
+    /**
+     * @return false if a call started now would be rejected. does not reserve anything, so {@link #tryAcquire()} may
+     * still fail.
+     */
+    public boolean isAvailable() {
+        if (inFlight.get() >= maxInFlight) return false;
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return nanoClock.getAsLong() - openedAt >= openNanos;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if a call may proceed, in which case the caller must call {@link #release(long, boolean)} or
+     * {@link #abandon()} when it completes
+     */
+    public boolean tryAcquire() {
+        final State current = state.get();
+        if (current == State.OPEN) {
+            // the first caller after the open duration becomes the probe
+            if (nanoClock.getAsLong() - openedAt < openNanos || !state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                return false;
+            }
+            inFlight.incrementAndGet();
+            return true;
+        }
+        if (current == State.HALF_OPEN) return false;
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * records the outcome of a call permitted by {@link #tryAcquire()}
+     * @param latencyNanos how long the call took
+     * @param success false if the call threw
+     */
+    public void release(long latencyNanos, boolean success) {
+        inFlight.decrementAndGet();
+        if (success && latencyNanos < slowCallNanos) {
+            consecutiveFailures.set(0);
+            state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+        } else if (state.get() == State.HALF_OPEN) {
+            openedAt = nanoClock.getAsLong();
+            state.compareAndSet(State.HALF_OPEN, State.OPEN);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            // openedAt is only read while the breaker is open, so it is written before opening
+            final long now = nanoClock.getAsLong();
+            if (state.get() == State.CLOSED) {
+                openedAt = now;
+                state.compareAndSet(State.CLOSED, State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * releases a call permitted by {@link #tryAcquire()} without recording an outcome, for calls which were
+     * interrupted because the caller no longer needed their result
+     */
+    public void abandon() {
+        inFlight.decrementAndGet();
+        // an abandoned probe leaves the breaker open so that another probe is sent after the open duration
+        if (state.get() == State.HALF_OPEN) {
+            openedAt = nanoClock.getAsLong();
+            state.compareAndSet(State.HALF_OPEN, State.OPEN);
+        }
+    }
+
+    /**
+     * runs call if the breaker permits it and records its outcome. calls which throw because the calling thread was
+     * interrupted are not counted against the replica, {@link Quorum} interrupts the stragglers of every broadcast.
+     * @throws ReplicaUnavailableException if the breaker rejected the call
+     */
+    public <R> R call(Callable<R> call) throws Exception {
+        if (!tryAcquire()) {
+            throw new ReplicaUnavailableException(inFlight.get() >= maxInFlight ? maxInFlight+" calls in flight" : "circuit breaker is "+state.get());
+        }
+        final long start = nanoClock.getAsLong();
+        try {
+            final R ret = call.call();
+            release(nanoClock.getAsLong() - start, true);
+            return ret;
+        } catch (Throwable t) {
+            if (t instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                abandon();
+            } else {
+                release(nanoClock.getAsLong() - start, false);
+            }
+            throw t;
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
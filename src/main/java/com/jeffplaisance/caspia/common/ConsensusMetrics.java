@@ -0,0 +1,104 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.util.concurrent.Callable;
+
+/**
+ * receives measurements from {@link com.jeffplaisance.caspia.log.LogClient},
+ * {@link com.jeffplaisance.caspia.register.RegisterClient} and the replica clients they use. implementations must be
+ * thread safe and cheap, they are called on every operation.
+ */
+public interface ConsensusMetrics {
+
+    ConsensusMetrics NOOP = new ConsensusMetrics() {
+        @Override
+        public void phase(Phase phase, long nanos, boolean success) {}
+
+        @Override
+        public void fastPath(boolean hit) {}
+
+        @Override
+        public void conflict() {}
+
+        @Override
+        public void retry() {}
+
+        @Override
+        public void replicaCall(String replica, long nanos, boolean success) {}
+
+        @Override
+        public void bytesWritten(String replica, long bytes) {}
+    };
+
+    enum Phase {
+        /** reading the current state from a quorum of replicas */
+        READ,
+        /** raising the proposal number on a quorum of replicas */
+        PROPOSE,
+        /** writing a value to a quorum of replicas, including fast path writes */
+        ACCEPT
+    }
+
+    /**
+     * @param phase the phase
+     * @param nanos the time taken by the phase including waiting for a quorum
+     * @param success false if the phase failed because of replica errors or conflicts
+     */
+    void phase(Phase phase, long nanos, boolean success);
+
+    /**
+     * @param hit true if a write was completed in a single round trip on the fast path, false if it fell back to or
+     * had to start on the slow path
+     */
+    void fastPath(boolean hit);
+
+    /**
+     * called whenever a propose or accept is rejected by too many replicas because another client changed their state
+     */
+    void conflict();
+
+    /**
+     * called whenever an operation is retried
+     */
+    void retry();
+
+    /**
+     * @param replica the name of the replica
+     * @param nanos the duration of the call
+     * @param success false if the call threw an exception
+     */
+    void replicaCall(String replica, long nanos, boolean success);
+
+    /**
+     * @param replica the name of the replica
+     * @param bytes the number of value bytes sent to the replica in a write
+     */
+    void bytesWritten(String replica, long bytes);
+
+    default <R> R time(Phase phase, Callable<R> callable) throws Exception {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final R ret = callable.call();
+            success = true;
+            return ret;
+        } finally {
+            phase(phase, System.nanoTime() - start, success);
+        }
+    }
+}
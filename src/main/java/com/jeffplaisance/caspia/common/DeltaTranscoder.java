@@ -0,0 +1,61 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * a transcoder which can also encode the difference between two values. registers using a DeltaTranscoder store a base
+ * value followed by a bounded chain of deltas so that a small change to a large value only sends the delta to the
+ * replicas. the chain is folded back into a new base once it reaches {@link #maxDeltas()} or whenever a value is
+ * written outside of the fast path.
+ */
+public interface DeltaTranscoder<T> extends Transcoder<T> {
+
+    /**
+     * @param previous the previous value, never null
+     * @param next the next value, never null
+     * @return an encoding of the change from previous to next such that applyDelta(previous, delta) equals next, or null
+     * if next should be written in full instead
+     */
+    @Nullable byte[] diff(T previous, T next);
+
+    /**
+     * @param value the value the delta was computed against. must not be modified.
+     * @param delta a delta returned by diff
+     * @return the result of applying delta to value
+     */
+    T applyDelta(T value, byte[] delta);
+
+    /**
+     * same as {@link #applyDelta(Object, byte[])} for a delta which is the bytes between the position and the limit of
+     * delta. transcoders which can read the delta in place should override this to avoid the copy.
+     */
+    default T applyDelta(T value, ByteBuffer delta) {
+        final byte[] bytes = new byte[delta.remaining()];
+        delta.get(bytes);
+        return applyDelta(value, bytes);
+    }
+
+    /**
+     * @return the maximum number of deltas stored after a base value before the value is compacted
+     */
+    default int maxDeltas() {
+        return 16;
+    }
+}
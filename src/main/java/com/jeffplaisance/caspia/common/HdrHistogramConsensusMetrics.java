@@ -0,0 +1,156 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * records latencies in HdrHistograms with three significant digits and counts everything else. the getters return
+ * copies so they can be read while recording continues.
+ */
+@ThreadSafe
+public final class HdrHistogramConsensusMetrics implements ConsensusMetrics {
+
+    private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<Phase, ConcurrentHistogram> phaseLatencies = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> phaseFailures = new EnumMap<>(Phase.class);
+    private final LongAdder fastPathHits = new LongAdder();
+    private final LongAdder fastPathMisses = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final ConcurrentMap<String, ReplicaStats> replicas = new ConcurrentHashMap<>();
+
+    public HdrHistogramConsensusMetrics() {
+        for (Phase phase : Phase.values()) {
+            phaseLatencies.put(phase, newHistogram());
+            phaseFailures.put(phase, new LongAdder());
+        }
+    }
+
+    private static ConcurrentHistogram newHistogram() {
+        return new ConcurrentHistogram(MAX_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    }
+
+    private static void record(Histogram histogram, long nanos) {
+        histogram.recordValue(Math.min(Math.max(nanos, 0), MAX_TRACKABLE_NANOS));
+    }
+
+    @Override
+    public void phase(Phase phase, long nanos, boolean success) {
+        record(phaseLatencies.get(phase), nanos);
+        if (!success) phaseFailures.get(phase).increment();
+    }
+
+    @Override
+    public void fastPath(boolean hit) {
+        (hit ? fastPathHits : fastPathMisses).increment();
+    }
+
+    @Override
+    public void conflict() {
+        conflicts.increment();
+    }
+
+    @Override
+    public void retry() {
+        retries.increment();
+    }
+
+    @Override
+    public void replicaCall(String replica, long nanos, boolean success) {
+        final ReplicaStats stats = replicaStats(replica);
+        record(stats.latency, nanos);
+        if (!success) stats.errors.increment();
+    }
+
+    @Override
+    public void bytesWritten(String replica, long bytes) {
+        replicaStats(replica).bytesWritten.add(bytes);
+    }
+
+    private ReplicaStats replicaStats(String replica) {
+        final ReplicaStats stats = replicas.get(replica);
+        return stats != null ? stats : replicas.computeIfAbsent(replica, k -> new ReplicaStats());
+    }
+
+    /**
+     * @param phase the phase
+     * @return latencies in nanoseconds of both successful and failed executions of phase
+     */
+    public Histogram getPhaseLatency(Phase phase) {
+        return phaseLatencies.get(phase).copy();
+    }
+
+    public long getPhaseFailures(Phase phase) {
+        return phaseFailures.get(phase).sum();
+    }
+
+    public long getFastPathHits() {
+        return fastPathHits.sum();
+    }
+
+    public long getFastPathMisses() {
+        return fastPathMisses.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public Set<String> getReplicas() {
+        return Collections.unmodifiableSet(replicas.keySet());
+    }
+
+    /**
+     * @param replica the name of the replica
+     * @return latencies in nanoseconds of all calls to replica
+     */
+    public Histogram getReplicaLatency(String replica) {
+        return replicaStats(replica).latency.copy();
+    }
+
+    public long getReplicaErrors(String replica) {
+        return replicaStats(replica).errors.sum();
+    }
+
+    public long getBytesWritten(String replica) {
+        return replicaStats(replica).bytesWritten.sum();
+    }
+
+    private static final class ReplicaStats {
+        private final ConcurrentHistogram latency = newHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * an int[] as 4 big endian bytes per element. the delta from a value to an extension of it is the encoding of the
+ * appended elements, so registers holding growing arrays only send what was appended.
+ */
+public final class IntArrayTranscoder implements BufferTranscoder<int[]>, DeltaTranscoder<int[]> {
+
+    @Override
+    public int encodedSize(int[] ints) {
+        return ints.length * 4;
+    }
+
+    @Override
+    public void encode(int[] ints, ByteBuffer out) {
+        encode(ints, 0, out);
+    }
+
+    private static void encode(int[] ints, int from, ByteBuffer out) {
+        out.asIntBuffer().put(ints, from, ints.length - from);
+        out.position(out.position() + (ints.length - from) * 4);
+    }
+
+    @Override
+    public int[] decode(ByteBuffer in) {
+        final int[] ret = new int[in.remaining() / 4];
+        in.asIntBuffer().get(ret);
+        return ret;
+    }
+
+    @Override
+    public byte[] toBytes(int[] ints) {
+        return BufferTranscoder.super.toBytes(ints);
+    }
+
+    @Override
+    public int[] fromBytes(byte[] bytes) {
+        return BufferTranscoder.super.fromBytes(bytes);
+    }
+
+    @Override
+    public byte[] diff(int[] previous, int[] next) {
+        if (next.length < previous.length) return null;
+        for (int i = 0; i < previous.length; i++) {
+            if (previous[i] != next[i]) return null;
+        }
+        final byte[] delta = new byte[(next.length - previous.length) * 4];
+        encode(next, previous.length, ByteBuffer.wrap(delta));
+        return delta;
+    }
+
+    @Override
+    public int[] applyDelta(int[] value, byte[] delta) {
+        return applyDelta(value, ByteBuffer.wrap(delta));
+    }
+
+    @Override
+    public int[] applyDelta(int[] value, ByteBuffer delta) {
+        final int suffix = delta.remaining() / 4;
+        final int[] ret = Arrays.copyOf(value, value.length + suffix);
+        delta.asIntBuffer().get(ret, value.length, suffix);
+        return ret;
+    }
+}
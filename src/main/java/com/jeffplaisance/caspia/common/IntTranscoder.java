@@ -0,0 +1,40 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * an int as 4 big endian bytes
+ */
+public final class IntTranscoder implements BufferTranscoder<Integer> {
+
+    @Override
+    public int encodedSize(Integer value) {
+        return 4;
+    }
+
+    @Override
+    public void encode(Integer value, ByteBuffer out) {
+        out.putInt(value);
+    }
+
+    @Override
+    public Integer decode(ByteBuffer in) {
+        return in.getInt(in.position());
+    }
+}
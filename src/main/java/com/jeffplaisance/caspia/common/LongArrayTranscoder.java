@@ -0,0 +1,83 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * a long[] as 8 big endian bytes per element. the delta from a value to an extension of it is the encoding of the
+ * appended elements, so registers holding growing arrays only send what was appended.
+ */
+public final class LongArrayTranscoder implements BufferTranscoder<long[]>, DeltaTranscoder<long[]> {
+
+    @Override
+    public int encodedSize(long[] longs) {
+        return longs.length * 8;
+    }
+
+    @Override
+    public void encode(long[] longs, ByteBuffer out) {
+        encode(longs, 0, out);
+    }
+
+    private static void encode(long[] longs, int from, ByteBuffer out) {
+        out.asLongBuffer().put(longs, from, longs.length - from);
+        out.position(out.position() + (longs.length - from) * 8);
+    }
+
+    @Override
+    public long[] decode(ByteBuffer in) {
+        final long[] ret = new long[in.remaining() / 8];
+        in.asLongBuffer().get(ret);
+        return ret;
+    }
+
+    @Override
+    public byte[] toBytes(long[] longs) {
+        return BufferTranscoder.super.toBytes(longs);
+    }
+
+    @Override
+    public long[] fromBytes(byte[] bytes) {
+        return BufferTranscoder.super.fromBytes(bytes);
+    }
+
+    @Override
+    public byte[] diff(long[] previous, long[] next) {
+        if (next.length < previous.length) return null;
+        for (int i = 0; i < previous.length; i++) {
+            if (previous[i] != next[i]) return null;
+        }
+        final byte[] delta = new byte[(next.length - previous.length) * 8];
+        encode(next, previous.length, ByteBuffer.wrap(delta));
+        return delta;
+    }
+
+    @Override
+    public long[] applyDelta(long[] value, byte[] delta) {
+        return applyDelta(value, ByteBuffer.wrap(delta));
+    }
+
+    @Override
+    public long[] applyDelta(long[] value, ByteBuffer delta) {
+        final int suffix = delta.remaining() / 8;
+        final long[] ret = Arrays.copyOf(value, value.length + suffix);
+        delta.asLongBuffer().get(ret, value.length, suffix);
+        return ret;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a long as 8 big endian bytes
+ */
+public final class LongTranscoder implements BufferTranscoder<Long> {
+
+    @Override
+    public int encodedSize(Long value) {
+        return 8;
+    }
+
+    @Override
+    public void encode(Long value, ByteBuffer out) {
+        out.putLong(value);
+    }
+
+    @Override
+    public Long decode(ByteBuffer in) {
+        return in.getLong(in.position());
+    }
+}
@@ -17,8 +17,11 @@ limitations under the License.
 package com.jeffplaisance.caspia.common;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Utf8;
 
-public class NonDelimitedStringTranscoder implements Transcoder<String> {
+import java.nio.ByteBuffer;
+
+public class NonDelimitedStringTranscoder implements BufferTranscoder<String> {
     @Override
     public byte[] toBytes(String s) {
         return s.getBytes(Charsets.UTF_8);
@@ -28,4 +31,44 @@ public class NonDelimitedStringTranscoder implements Transcoder<String> {
     public String fromBytes(byte[] bytes) {
         return new String(bytes, Charsets.UTF_8);
     }
+
+    @Override
+    public int encodedSize(String s) {
+        return Utf8.encodedLength(s);
+    }
+
+    @Override
+    public void encode(String s, ByteBuffer out) {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >>> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >>> 18)));
+                out.put((byte) (0x80 | ((codePoint >>> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >>> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                throw new IllegalArgumentException("unpaired surrogate at index "+i);
+            } else {
+                out.put((byte) (0xE0 | (c >>> 12)));
+                out.put((byte) (0x80 | ((c >>> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    @Override
+    public String decode(ByteBuffer in) {
+        if (in.hasArray()) {
+            return new String(in.array(), in.arrayOffset() + in.position(), in.remaining(), Charsets.UTF_8);
+        }
+        final byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
 }
@@ -24,12 +24,27 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public final class Quorum {
 
     private static final ExecutorService threadPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("broadcast-thread-%d").setDaemon(false).build());
 
+    private static final Broadcaster BROADCASTER = new Broadcaster() {
+        @Override
+        public <A, R, E extends Exception> List<R> broadcast2(List<A> replicas, int minSuccessful, List<Optional<ThrowingFunction<A, R, E>>> functions, R failureResponse, Predicate<? super R> successful) throws Exception {
+            return Quorum.broadcast2(replicas, minSuccessful, functions, failureResponse, successful);
+        }
+    };
+
+    /**
+     * @return a Broadcaster which calls {@link #broadcast2(List, int, List, Object, Predicate)}
+     */
+    public static Broadcaster broadcaster() {
+        return BROADCASTER;
+    }
+
     public static <A, R, E extends Exception> List<R> broadcast(List<A> replicas, int minSuccessful, final ThrowingFunction<A, R, E> function, R failureResponse) throws Exception {
         return broadcast(replicas, minSuccessful, Collections.nCopies(replicas.size(), function), failureResponse);
     }
@@ -39,13 +54,39 @@ public final class Quorum {
     }
 
     public static <A, R, E extends Exception> List<R> broadcast2(List<A> replicas, int minSuccessful, final List<Optional<ThrowingFunction<A, R, E>>> functions, R failureResponse) throws Exception {
+        return broadcast2(replicas, minSuccessful, functions, failureResponse, result -> true);
+    }
+
+    /**
+     * see {@link Broadcaster#broadcast2(List, int, List, Object, Predicate)}
+     */
+    public static <A, R, E extends Exception> List<R> broadcast2(List<A> replicas, int minSuccessful, final List<Optional<ThrowingFunction<A, R, E>>> functions, R failureResponse, Predicate<? super R> successful) throws Exception {
         final AtomicReferenceArray<R> results = new AtomicReferenceArray<>(replicas.size());
         final ExecutorCompletionService<R> completionService = new ExecutorCompletionService<>(threadPool);
         final List<Future<R>> futures = new ArrayList<>();
+        // only allocate the event while a recording has it enabled, broadcasts are on every hot path
+        final BroadcastEvent event = BroadcastEvent.TYPE.isEnabled() ? new BroadcastEvent() : null;
+        if (event != null) event.begin();
         try {
-            final int numRecipients = (int)functions.stream().filter(Optional::isPresent).count();
+            // replicas whose circuit breaker is open are skipped as if they had failed, rather than waiting on them
+            final boolean[] recipients = new boolean[replicas.size()];
+            int numRecipients = 0;
             for (int i = 0; i < replicas.size(); i++) {
-                if (functions.get(i).isPresent()) {
+                recipients[i] = functions.get(i).isPresent() && CircuitBreaker.isAvailable(replicas.get(i));
+                if (recipients[i]) numRecipients++;
+            }
+            if (event != null) {
+                event.replicas = replicas.size();
+                event.recipients = numRecipients;
+                event.unavailable = (int) functions.stream().filter(Optional::isPresent).count() - numRecipients;
+                event.quorumSize = minSuccessful;
+            }
+            if (numRecipients < minSuccessful) {
+                if (event != null) event.end();
+                throw new ReplicaUnavailableException(numRecipients+" of "+replicas.size()+" replicas available, "+minSuccessful+" required");
+            }
+            for (int i = 0; i < replicas.size(); i++) {
+                if (recipients[i]) {
                     final int replicaIndex = i;
                     futures.add(completionService.submit(() -> {
                         R result = functions.get(replicaIndex).get().apply(replicas.get(replicaIndex));
@@ -54,21 +95,32 @@ public final class Quorum {
                     }));
                 }
             }
+            int responses = 0;
             int successes = 0;
             Throwable firstError = null;
             for (int i = 0; i < numRecipients; i++) {
                 final Future<R> future = completionService.take();
                 try {
-                    future.get();
-                    successes++;
-                    if (successes >= minSuccessful) {
-                        break;
+                    responses++;
+                    if (successful.test(future.get())) {
+                        successes++;
+                        if (successes >= minSuccessful) {
+                            break;
+                        }
                     }
                 } catch (ExecutionException e) {
+                    responses--;
                     if (firstError == null) firstError = e.getCause();
                 }
             }
-            if (successes < minSuccessful) throw firstError != null ? new Exception(firstError) : new Exception("this shouldn't happen");
+            if (event != null) {
+                event.end();
+                event.successes = successes;
+            }
+            if (responses < minSuccessful) {
+                final String message = responses+" of "+numRecipients+" replicas responded, "+minSuccessful+" required";
+                throw firstError != null ? new Exception(message, firstError) : new Exception(message);
+            }
             final List<R> ret = new ArrayList<>();
             for (int i = 0; i < results.length(); i++) {
                 final R result = results.get(i);
@@ -76,8 +128,13 @@ public final class Quorum {
             }
             return ret;
         } finally {
+            int cancelled = 0;
             for (Future<R> future : futures) {
-                future.cancel(true);
+                if (future.cancel(true)) cancelled++;
+            }
+            if (event != null && event.shouldCommit()) {
+                event.cancelled = cancelled;
+                event.commit();
             }
         }
     }
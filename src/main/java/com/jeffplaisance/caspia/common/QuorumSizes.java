@@ -0,0 +1,78 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * the number of replicas which must respond in each phase, as a function of the number of replicas n. paxos only
+ * requires every phase 1 quorum (reads and proposes) to intersect every phase 2 quorum (accepts), so phase1(n) +
+ * phase2(n) > n, and phase 2 quorums need not intersect each other (flexible paxos). a client on the fast path only
+ * runs phase 2, so shrinking phase 2 quorums makes steady state writes wait for fewer replicas, at the cost of larger
+ * quorums whenever a client has to read or propose.
+ * <p>
+ * every client of a log or register must use the same quorum sizes.
+ */
+@Immutable
+public final class QuorumSizes {
+
+    /**
+     * a majority in both phases. with an even number of replicas phase 1 quorums are one larger than they need to be,
+     * which keeps replica set changes of registers safe without further conditions.
+     */
+    public static final QuorumSizes MAJORITY = new QuorumSizes(0);
+
+    // 0 for majorities
+    private final int phase2;
+
+    private QuorumSizes(int phase2) {
+        this.phase2 = phase2;
+    }
+
+    /**
+     * @param phase2 the number of replicas which must accept a value for it to be chosen. if there are fewer replicas
+     * than this all of them must accept.
+     * @return quorum sizes with phase 2 quorums of the given size and the smallest phase 1 quorums which intersect them
+     */
+    public static QuorumSizes flexible(int phase2) {
+        Preconditions.checkArgument(phase2 > 0);
+        return new QuorumSizes(phase2);
+    }
+
+    /**
+     * @param n the number of replicas
+     * @return the number of replicas which must respond to a read or a propose
+     */
+    public int phase1(int n) {
+        return phase2 == 0 ? n - Base.lessThanHalf(n) : n - phase2(n) + 1;
+    }
+
+    /**
+     * @param n the number of replicas
+     * @return the number of replicas which must accept a value
+     */
+    public int phase2(int n) {
+        return phase2 == 0 ? n - Base.lessThanHalf(n) : Math.min(phase2, n);
+    }
+
+    @Override
+    public String toString() {
+        return phase2 == 0 ? "majority" : "phase2="+phase2;
+    }
+}
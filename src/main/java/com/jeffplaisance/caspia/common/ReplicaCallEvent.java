@@ -0,0 +1,90 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.annotation.Nullable;
+
+/**
+ * flight recorder event for one call to a log or register replica. use {@link #beginIfEnabled()} so that no event is
+ * allocated unless a recording has it enabled, the fields are only filled in if the event will be committed.
+ */
+@Name("com.jeffplaisance.caspia.ReplicaCall")
+@Label("Replica Call")
+@Category("Caspia")
+@StackTrace(false)
+public final class ReplicaCallEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(ReplicaCallEvent.class);
+
+    @Label("Replica")
+    String replica;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Key")
+    String key;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Applied")
+    boolean applied;
+
+    @Label("Value Size")
+    @DataAmount
+    long valueSize;
+
+    /**
+     * @return a begun event, or null if no recording has this event enabled
+     */
+    public static @Nullable ReplicaCallEvent beginIfEnabled() {
+        if (!TYPE.isEnabled()) return null;
+        final ReplicaCallEvent event = new ReplicaCallEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * ends and commits event if it is enabled and over its threshold
+     * @param replica the name of the replica
+     * @param operation the method called on the replica
+     * @param key the log index or register id, null if the operation has no key
+     * @param success false if the call threw an exception
+     * @param applied the result of a compare and set, true for successful reads
+     * @param valueSize the size of the value written, 0 for reads
+     */
+    public void finish(String replica, String operation, @Nullable Object key, boolean success, boolean applied, long valueSize) {
+        end();
+        if (shouldCommit()) {
+            this.replica = replica;
+            this.operation = operation;
+            this.key = key == null ? null : key.toString();
+            this.success = success;
+            this.applied = applied;
+            this.valueSize = valueSize;
+            commit();
+        }
+    }
+}
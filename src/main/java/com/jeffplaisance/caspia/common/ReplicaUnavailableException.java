@@ -0,0 +1,30 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.io.IOException;
+
+/**
+ * thrown instead of calling a replica whose {@link CircuitBreaker} is open or has too many calls in flight
+ */
+public class ReplicaUnavailableException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ReplicaUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * retries operations on {@link com.jeffplaisance.caspia.log.LogClient} and
+ * {@link com.jeffplaisance.caspia.register.RegisterClient} according to a {@link RetryPolicy}. only checked exceptions
+ * are retried, runtime exceptions come from the caller's own code (such as a register update function) and are
+ * rethrown immediately, as is {@link InterruptedException} so that a cancelled operation isn't retried.
+ */
+@ThreadSafe
+public final class RetryExecutor {
+
+    public interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    private final RetryPolicy policy;
+    private final ConsensusMetrics metrics;
+    private final Sleeper sleeper;
+
+    public RetryExecutor(RetryPolicy policy) {
+        this(policy, ConsensusMetrics.NOOP);
+    }
+
+    public RetryExecutor(RetryPolicy policy, ConsensusMetrics metrics) {
+        this(policy, metrics, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    /**
+     * @param policy the policy
+     * @param metrics receives a retry for each attempt after the first
+     * @param sleeper waits out backoffs, replaceable to run on virtual time
+     */
+    public RetryExecutor(RetryPolicy policy, ConsensusMetrics metrics, Sleeper sleeper) {
+        this.policy = policy;
+        this.metrics = metrics;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * @param operation the operation
+     * @return the result of the first successful attempt
+     * @throws Exception the exception thrown by the last attempt if all attempts failed or too many conflicts occurred
+     */
+    public <R> R call(Callable<R> operation) throws Exception {
+        return call(operation, () -> true);
+    }
+
+    /**
+     * @param operation the operation
+     * @param holdsFastPath whether the client which operation uses currently holds the fast path, for example
+     * {@code client::hasFastPath}. checked before each attempt, since clients give up the fast path as soon as they
+     * see a conflict. a client which held it when the conflicting attempt started doesn't yield.
+     * @return the result of the first successful attempt
+     * @throws Exception the exception thrown by the last attempt if all attempts failed or too many conflicts occurred
+     */
+    public <R> R call(Callable<R> operation, BooleanSupplier holdsFastPath) throws Exception {
+        double backoffBound = policy.getInitialBackoffNanos();
+        int consecutiveConflicts = 0;
+        for (int attempt = 1; ; attempt++) {
+            final boolean heldFastPath = holdsFastPath.getAsBoolean();
+            try {
+                return operation.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            } catch (Exception e) {
+                final boolean conflict = e instanceof ConflictException;
+                consecutiveConflicts = conflict ? consecutiveConflicts + 1 : 0;
+                if (attempt >= policy.getMaxAttempts() || consecutiveConflicts >= policy.getMaxConsecutiveConflicts()) {
+                    throw e;
+                }
+                double bound = Math.min(backoffBound, policy.getMaxBackoffNanos());
+                if (conflict && !heldFastPath) {
+                    bound *= policy.getYieldFactor();
+                }
+                final long backoff = (long)(ThreadLocalRandom.current().nextDouble() * bound);
+                if (backoff > 0) sleeper.sleep(backoff);
+                backoffBound *= policy.getMultiplier();
+                metrics.retry();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * configuration for {@link RetryExecutor}
+ */
+@Immutable
+public final class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(10, 1, 100, TimeUnit.MILLISECONDS, 2, 5, 4);
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double multiplier;
+    private final int maxConsecutiveConflicts;
+    private final double yieldFactor;
+
+    /**
+     * @param maxAttempts the maximum number of attempts including the first
+     * @param initialBackoff the upper bound of the backoff before the first retry. each backoff is uniformly random
+     * between zero and its upper bound so that clients which failed together don't retry together.
+     * @param maxBackoff the largest upper bound of a backoff
+     * @param unit the unit of initialBackoff and maxBackoff
+     * @param multiplier the upper bound is multiplied by this after each retry
+     * @param maxConsecutiveConflicts give up after this many consecutive {@link ConflictException}s. a conflict means
+     * another client is writing, retrying against it only makes both clients slower.
+     * @param yieldFactor backoffs after a conflict are multiplied by this when the client does not hold the fast path,
+     * so that a client which is already writing in one round trip is left to finish before others compete with it
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, TimeUnit unit, double multiplier, int maxConsecutiveConflicts, double yieldFactor) {
+        Preconditions.checkArgument(maxAttempts > 0);
+        Preconditions.checkArgument(0 <= initialBackoff && initialBackoff <= maxBackoff);
+        Preconditions.checkArgument(multiplier >= 1);
+        Preconditions.checkArgument(maxConsecutiveConflicts > 0);
+        Preconditions.checkArgument(yieldFactor >= 1);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = unit.toNanos(initialBackoff);
+        this.maxBackoffNanos = unit.toNanos(maxBackoff);
+        this.multiplier = multiplier;
+        this.maxConsecutiveConflicts = maxConsecutiveConflicts;
+        this.yieldFactor = yieldFactor;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffNanos() {
+        return initialBackoffNanos;
+    }
+
+    public long getMaxBackoffNanos() {
+        return maxBackoffNanos;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public int getMaxConsecutiveConflicts() {
+        return maxConsecutiveConflicts;
+    }
+
+    public double getYieldFactor() {
+        return yieldFactor;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a long[] as zigzag encoded varints, 7 bits per byte with the high bit set on every byte but the last of each
+ * element. small magnitudes of either sign take one or two bytes, which makes this a compact encoding for counters and
+ * other numeric vectors whose elements are mostly small. decoding counts the elements before filling the result so no
+ * intermediate buffer is needed.
+ */
+public final class VarLongArrayTranscoder implements BufferTranscoder<long[]> {
+
+    @Override
+    public int encodedSize(long[] longs) {
+        int size = 0;
+        for (long l : longs) {
+            size += varLongSize(zigzag(l));
+        }
+        return size;
+    }
+
+    @Override
+    public void encode(long[] longs, ByteBuffer out) {
+        for (long l : longs) {
+            long v = zigzag(l);
+            while ((v & ~0x7FL) != 0) {
+                out.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.put((byte) v);
+        }
+    }
+
+    @Override
+    public long[] decode(ByteBuffer in) {
+        int count = 0;
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) >= 0) count++;
+        }
+        final long[] ret = new long[count];
+        for (int i = 0; i < count; i++) {
+            long v = 0;
+            int shift = 0;
+            while (true) {
+                final byte b = in.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) break;
+                shift += 7;
+            }
+            ret[i] = (v >>> 1) ^ -(v & 1);
+        }
+        return ret;
+    }
+
+    private static long zigzag(long l) {
+        return (l << 1) ^ (l >> 63);
+    }
+
+    private static int varLongSize(long v) {
+        // 1 byte per 7 significant bits, at least 1
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(v) + 6) / 7);
+    }
+}
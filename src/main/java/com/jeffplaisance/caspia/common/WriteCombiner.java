@@ -0,0 +1,167 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * combines writes submitted concurrently by many threads into batches. each caller queues its write and whichever
+ * caller acquires the combiner first sends every queued write, up to the maximum batch size, in one call to the batch
+ * writer and completes the result of each write. callers whose writes were sent by another thread return as soon as
+ * that batch completes. an interrupt doesn't abandon a batch once the combining thread holds the lock, since the batch
+ * holds other callers' writes.
+ * <p>
+ * under load batches form on their own while the previous batch is in flight. a linger makes the combining thread wait
+ * for more writes before sending a batch, which trades latency for larger batches at lower load.
+ * @param <W> the write type
+ */
+@ThreadSafe
+public final class WriteCombiner<W> {
+
+    private final ThrowingFunction<List<W>, boolean[], Exception> batchWriter;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Queue<PendingWrite<W>> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Lock lock = new ReentrantLock();
+    private volatile @Nullable Thread lingering = null;
+
+    /**
+     * @param batchWriter applies a batch of writes and returns whether each one was applied, in order. if it throws,
+     * every write in the batch fails with the exception.
+     * @param maxBatchSize the maximum number of writes sent in one batch
+     * @param lingerMicros how long the combining thread waits for more writes before sending a batch, 0 to send
+     * immediately. the wait ends early once maxBatchSize writes are queued.
+     */
+    public WriteCombiner(ThrowingFunction<List<W>, boolean[], Exception> batchWriter, int maxBatchSize, long lingerMicros) {
+        Preconditions.checkArgument(maxBatchSize > 0);
+        Preconditions.checkArgument(lingerMicros >= 0);
+        this.batchWriter = batchWriter;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+    }
+
+    /**
+     * @param write the write
+     * @return whether the write was applied
+     * @throws Exception if the batch containing the write failed
+     */
+    public boolean write(W write) throws Exception {
+        final PendingWrite<W> pending = new PendingWrite<>(write);
+        pendingWrites.add(pending);
+        if (pendingCount.incrementAndGet() >= maxBatchSize) {
+            final Thread combiner = lingering;
+            if (combiner != null) LockSupport.unpark(combiner);
+        }
+        lock.lock();
+        try {
+            // another thread may have sent our write while we waited for the lock, otherwise it is still queued and we
+            // send it along with everything queued behind it
+            while (!pending.done) {
+                // the batch holds other callers' writes, so it's sent even if this caller was cancelled while waiting,
+                // Quorum cancels replicas which are slower than the quorum. the interrupt is restored afterwards.
+                final boolean interrupted = Thread.interrupted();
+                try {
+                    writeBatch();
+                } finally {
+                    if (interrupted) Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return pending.getResult();
+    }
+
+    @GuardedBy("lock")
+    private void writeBatch() {
+        if (lingerNanos > 0) linger();
+        final List<PendingWrite<W>> batch = new ArrayList<>();
+        final List<W> writes = new ArrayList<>();
+        for (PendingWrite<W> next; batch.size() < maxBatchSize && (next = pendingWrites.poll()) != null; ) {
+            pendingCount.decrementAndGet();
+            batch.add(next);
+            writes.add(next.write);
+        }
+        try {
+            final boolean[] results = batchWriter.apply(writes);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).succeed(results[i]);
+            }
+        } catch (Throwable t) {
+            for (PendingWrite<W> pending : batch) {
+                if (!pending.done) pending.fail(t);
+            }
+        }
+    }
+
+    @GuardedBy("lock")
+    private void linger() {
+        lingering = Thread.currentThread();
+        try {
+            final long deadline = System.nanoTime() + lingerNanos;
+            for (long remaining = lingerNanos; remaining > 0 && pendingCount.get() < maxBatchSize; remaining = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            lingering = null;
+        }
+    }
+
+    private static final class PendingWrite<W> {
+        private final W write;
+        private boolean result;
+        private @Nullable Throwable error;
+        private boolean done = false;
+
+        private PendingWrite(W write) {
+            this.write = write;
+        }
+
+        private void succeed(boolean result) {
+            this.result = result;
+            done = true;
+        }
+
+        private void fail(Throwable error) {
+            this.error = error;
+            done = true;
+        }
+
+        private boolean getResult() throws Exception {
+            if (error != null) {
+                Throwables.propagateIfInstanceOf(error, Exception.class);
+                throw Throwables.propagate(error);
+            }
+            return result;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.jeffplaisance.caspia.log.LogClient;
 import com.jeffplaisance.caspia.log.JDBCLogReplicaClient;
 import com.jeffplaisance.caspia.register.JDBCRegisterReplicaClient;
 import com.jeffplaisance.caspia.register.RegisterClient;
+import com.jeffplaisance.caspia.register.RegisterNamespace;
 import org.apache.commons.dbcp2.BasicDataSource;
 
 import javax.sql.DataSource;
@@ -32,6 +33,7 @@ import java.util.stream.Collectors;
 public class CLI {
     public static List<JDBCLogReplicaClient> replicas;
     public static LogClient client;
+    public static RegisterNamespace<String> registers;
     public static RegisterClient<String> register;
 
     private static final List<String> connectStrings = Arrays.asList(
@@ -56,10 +58,10 @@ public class CLI {
                 .map(str -> new JDBCLogReplicaClient(getDataSource(str, username, password), "log01"))
                 .collect(Collectors.toList());
         client = new LogClient(replicas);
-        register = new RegisterClient<>(
+        registers = new RegisterNamespace<>(
                 Longs.asList(1, 2, 3, 4, 5),
                 x -> new JDBCRegisterReplicaClient(getDataSource(connectStrings.get(x.intValue()-1), username, password),"registers", x),
-                new NonDelimitedStringTranscoder(),
-                "jeff");
+                new NonDelimitedStringTranscoder());
+        register = registers.get("jeff");
     }
 }
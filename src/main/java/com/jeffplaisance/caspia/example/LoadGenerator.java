@@ -0,0 +1,286 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.example;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.ConsensusMetrics.Phase;
+import com.jeffplaisance.caspia.common.HdrHistogramConsensusMetrics;
+import com.jeffplaisance.caspia.common.RetryExecutor;
+import com.jeffplaisance.caspia.common.RetryPolicy;
+import com.jeffplaisance.caspia.common.Transcoder;
+import com.jeffplaisance.caspia.log.LocalLogReplicaClient;
+import com.jeffplaisance.caspia.log.LogClient;
+import com.jeffplaisance.caspia.log.LogReplicaClient;
+import com.jeffplaisance.caspia.register.LocalRegisterReplicaClient;
+import com.jeffplaisance.caspia.register.RegisterNamespace;
+import com.jeffplaisance.caspia.register.RegisterReplicaClient;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * load generator for the log and the register running against in memory replicas.
+ * <p>
+ * with --rate set the load is open loop: each client has a schedule of intended start times and the latency of an
+ * operation is measured from its intended start, so a stall is charged to every operation that should have started
+ * during it instead of being hidden by the clients slowing down (coordinated omission). the service time measured from
+ * the actual start is reported alongside. without --rate every client runs closed loop and both are the same.
+ * <p>
+ * failed operations are retried by a {@link RetryExecutor} with jittered exponential backoff until they succeed or the
+ * retry policy gives up, the latency includes the retries.
+ * <p>
+ * options:
+ * <pre>
+ * --target=log|register   what to write to (register)
+ * --clients=n             number of clients, each on its own thread (4)
+ * --replicas=n            number of replicas (3)
+ * --keys=n                number of registers or logs the clients spread over, fewer keys means more contention (1)
+ * --value-size=n          bytes per value (64)
+ * --rate=n                total operations per second over all clients, 0 for closed loop (0)
+ * --warmup=s              seconds before recording starts (5)
+ * --duration=s            seconds to record (30)
+ * --max-retries=n         attempts per operation before it counts as failed (1000)
+ * --initial-backoff-us=n  upper bound of the first backoff (100)
+ * --max-backoff-us=n      largest upper bound of a backoff (10000)
+ * --max-conflicts=n       consecutive conflicts after which an operation counts as failed (1000)
+ * --failure-probability=p replica nemesis, see LocalLogReplicaClient (0)
+ * --delay-probability=p   replica nemesis (0)
+ * --delay-ns=n            replica nemesis (10000)
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private interface OperationFactory {
+        Operation create(int client, Random random);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new Options(args);
+        final String target = options.getString("target", "register");
+        final int numClients = options.getInt("clients", 4);
+        final int numReplicas = options.getInt("replicas", 3);
+        final int keys = options.getInt("keys", 1);
+        final int valueSize = options.getInt("value-size", 64);
+        final double rate = options.getDouble("rate", 0);
+        final int warmupSeconds = options.getInt("warmup", 5);
+        final int durationSeconds = options.getInt("duration", 30);
+        final RetryPolicy retryPolicy = new RetryPolicy(
+                options.getInt("max-retries", 1000),
+                options.getInt("initial-backoff-us", 100),
+                options.getInt("max-backoff-us", 10000),
+                TimeUnit.MICROSECONDS,
+                2,
+                options.getInt("max-conflicts", 1000),
+                1);
+        final double failureProbability = options.getFailureProbability(0);
+        final double delayProbability = options.getDelayProbability(0);
+        final int delayNs = options.getDelayNs(10000);
+
+        final HdrHistogramConsensusMetrics metrics = new HdrHistogramConsensusMetrics();
+        final RetryExecutor retryExecutor = new RetryExecutor(retryPolicy, metrics);
+        final OperationFactory operations;
+        if (target.equals("log")) {
+            operations = logOperations(numReplicas, keys, valueSize, failureProbability, delayProbability, delayNs, metrics);
+        } else if (target.equals("register")) {
+            operations = registerOperations(numReplicas, keys, valueSize, failureProbability, delayProbability, delayNs, metrics);
+        } else {
+            throw new IllegalArgumentException("unknown target "+target);
+        }
+
+        // zero interval means closed loop
+        final long intervalNanos = rate > 0 ? (long)(TimeUnit.SECONDS.toNanos(1) * numClients / rate) : 0;
+        final long start = System.nanoTime();
+        final long recordStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        final long recordEnd = recordStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        final ExecutorService threadPool = Executors.newFixedThreadPool(numClients, new ThreadFactoryBuilder().setNameFormat("load-thread-%d").setDaemon(true).build());
+        final ExecutorCompletionService<Worker> ecs = new ExecutorCompletionService<>(threadPool);
+        for (int i = 0; i < numClients; i++) {
+            // stagger the schedules so the clients don't all fire at once
+            final Worker worker = new Worker(operations.create(i, new Random(i)), start + intervalNanos * i / numClients, intervalNanos, recordStart, recordEnd, retryExecutor);
+            ecs.submit(worker::run, worker);
+        }
+        final Histogram latency = new Histogram(MAX_LATENCY_NANOS, 3);
+        final Histogram serviceTime = new Histogram(MAX_LATENCY_NANOS, 3);
+        long failed = 0;
+        for (int i = 0; i < numClients; i++) {
+            final Worker worker = ecs.take().get();
+            latency.add(worker.latency);
+            serviceTime.add(worker.serviceTime);
+            failed += worker.failed;
+        }
+        threadPool.shutdown();
+
+        System.out.printf("target=%s clients=%d replicas=%d keys=%d value-size=%d rate=%s%n",
+                target, numClients, numReplicas, keys, valueSize, rate > 0 ? String.valueOf(rate) : "closed loop");
+        System.out.printf("throughput = %.1f ops/s, completed = %d, failed = %d%n",
+                latency.getTotalCount() / (double)durationSeconds, latency.getTotalCount(), failed);
+        System.out.printf("%-10s %12s %12s%n", "percentile", "latency us", "service us");
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99, 100}) {
+            System.out.printf("%-10s %12.1f %12.1f%n", percentile, latency.getValueAtPercentile(percentile) / 1000.0, serviceTime.getValueAtPercentile(percentile) / 1000.0);
+        }
+        final long hits = metrics.getFastPathHits();
+        final long misses = metrics.getFastPathMisses();
+        System.out.printf("fast path hit rate = %.3f, conflicts = %d, retries = %d%n",
+                hits + misses == 0 ? 0 : hits / (double)(hits + misses), metrics.getConflicts(), metrics.getRetries());
+        for (Phase phase : Phase.values()) {
+            final Histogram phaseLatency = metrics.getPhaseLatency(phase);
+            System.out.printf("%-8s count = %d, failures = %d, p50 = %.1f us, p99 = %.1f us%n", phase, phaseLatency.getTotalCount(), metrics.getPhaseFailures(phase),
+                    phaseLatency.getValueAtPercentile(50) / 1000.0, phaseLatency.getValueAtPercentile(99) / 1000.0);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * each client appends to a randomly chosen log. an operation is finished when the value has been committed at some
+     * index, losing an index to another client moves on to the next one.
+     */
+    private static OperationFactory logOperations(int numReplicas, int keys, int valueSize, double failureProbability, double delayProbability, int delayNs, ConsensusMetrics metrics) {
+        final List<List<LogReplicaClient>> logs = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            final List<LogReplicaClient> replicas = new ArrayList<>();
+            for (int j = 0; j < numReplicas; j++) {
+                replicas.add(new LocalLogReplicaClient(failureProbability, delayProbability, delayNs));
+            }
+            logs.add(replicas);
+        }
+        return (client, random) -> {
+            final List<LogClient> clients = logs.stream().map(replicas -> new LogClient(replicas, metrics)).collect(Collectors.toList());
+            final long[] nextIndex = LongStream.generate(() -> 1).limit(keys).toArray();
+            final byte[] value = new byte[valueSize];
+            return () -> {
+                final int key = random.nextInt(keys);
+                final LogClient log = clients.get(key);
+                random.nextBytes(value);
+                while (!log.write(nextIndex[key], value)) {
+                    nextIndex[key] = Math.max(nextIndex[key]+1, log.readLastIndex());
+                }
+                nextIndex[key]++;
+            };
+        };
+    }
+
+    /**
+     * each client overwrites a randomly chosen register. clients have their own RegisterClient per register so
+     * clients sharing a register compete with each other the way separate processes would.
+     */
+    private static OperationFactory registerOperations(int numReplicas, int keys, int valueSize, double failureProbability, double delayProbability, int delayNs, ConsensusMetrics metrics) {
+        final List<Long> replicas = LongStream.rangeClosed(1, numReplicas).boxed().collect(Collectors.toList());
+        final ConcurrentMap<Long, RegisterReplicaClient> replicaClients = new ConcurrentHashMap<>();
+        for (long replicaId : replicas) {
+            replicaClients.put(replicaId, new LocalRegisterReplicaClient(replicaId, failureProbability, delayProbability, delayNs));
+        }
+        final Transcoder<byte[]> transcoder = new Transcoder<byte[]>() {
+            @Override
+            public byte[] toBytes(byte[] bytes) {
+                return bytes;
+            }
+
+            @Override
+            public byte[] fromBytes(byte[] bytes) {
+                return bytes;
+            }
+        };
+        return (client, random) -> {
+            final RegisterNamespace<byte[]> registers = new RegisterNamespace<>(x -> replicas, replicaClients::get, transcoder, 0, metrics);
+            return () -> {
+                final byte[] value = new byte[valueSize];
+                random.nextBytes(value);
+                registers.write(random.nextInt(keys), x -> value);
+            };
+        };
+    }
+
+    private static final class Worker {
+        private final Operation operation;
+        private final long firstStart;
+        private final long intervalNanos;
+        private final long recordStart;
+        private final long recordEnd;
+        private final RetryExecutor retryExecutor;
+        private final Histogram latency = new Histogram(MAX_LATENCY_NANOS, 3);
+        private final Histogram serviceTime = new Histogram(MAX_LATENCY_NANOS, 3);
+        private long failed = 0;
+
+        private Worker(Operation operation, long firstStart, long intervalNanos, long recordStart, long recordEnd, RetryExecutor retryExecutor) {
+            this.operation = operation;
+            this.firstStart = firstStart;
+            this.intervalNanos = intervalNanos;
+            this.recordStart = recordStart;
+            this.recordEnd = recordEnd;
+            this.retryExecutor = retryExecutor;
+        }
+
+        private void run() {
+            long intendedStart = firstStart;
+            while (true) {
+                long now = System.nanoTime();
+                if (intervalNanos > 0) {
+                    while (intendedStart - now > 0) {
+                        LockSupport.parkNanos(intendedStart - now);
+                        now = System.nanoTime();
+                    }
+                } else {
+                    intendedStart = now;
+                }
+                if (intendedStart - recordEnd >= 0) return;
+                final long actualStart = now;
+                final boolean success = runWithRetries();
+                final long end = System.nanoTime();
+                if (intendedStart - recordStart >= 0) {
+                    if (success) {
+                        latency.recordValue(Math.min(end - intendedStart, MAX_LATENCY_NANOS));
+                        serviceTime.recordValue(Math.min(end - actualStart, MAX_LATENCY_NANOS));
+                    } else {
+                        failed++;
+                    }
+                }
+                intendedStart += intervalNanos;
+            }
+        }
+
+        private boolean runWithRetries() {
+            try {
+                retryExecutor.call(() -> {
+                    operation.run();
+                    return null;
+                });
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+    }
+}
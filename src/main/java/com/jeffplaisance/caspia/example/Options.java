@@ -0,0 +1,69 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * command line options of the form --name=value shared by the example programs
+ */
+final class Options {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    Options(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("expected --name=value but got "+arg);
+            final int equals = arg.indexOf('=');
+            if (equals < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, equals), arg.substring(equals+1));
+            }
+        }
+    }
+
+    String getString(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int getInt(String name, int defaultValue) {
+        final String value = values.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    double getDouble(String name, double defaultValue) {
+        final String value = values.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * nemesis settings for LocalLogReplicaClient and LocalRegisterReplicaClient
+     */
+    double getFailureProbability(double defaultValue) {
+        return getDouble("failure-probability", defaultValue);
+    }
+
+    double getDelayProbability(double defaultValue) {
+        return getDouble("delay-probability", defaultValue);
+    }
+
+    int getDelayNs(int defaultValue) {
+        return getInt("delay-ns", defaultValue);
+    }
+}
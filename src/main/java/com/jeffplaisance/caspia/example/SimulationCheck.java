@@ -0,0 +1,246 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.example;
+
+import com.google.common.primitives.Ints;
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.IntArrayTranscoder;
+import com.jeffplaisance.caspia.common.QuorumSizes;
+import com.jeffplaisance.caspia.log.LocalLogReplicaClient;
+import com.jeffplaisance.caspia.log.LogClient;
+import com.jeffplaisance.caspia.log.LogReplicaClient;
+import com.jeffplaisance.caspia.log.WitnessLogReplicaClient;
+import com.jeffplaisance.caspia.register.LocalRegisterReplicaClient;
+import com.jeffplaisance.caspia.register.RegisterClient;
+import com.jeffplaisance.caspia.register.RegisterReplicaClient;
+import com.jeffplaisance.caspia.register.ReplicaUpdate;
+import com.jeffplaisance.caspia.register.WitnessRegisterReplicaClient;
+import com.jeffplaisance.caspia.simulation.SimulatedNetwork;
+import com.jeffplaisance.caspia.simulation.Simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * runs {@link LogClient} and {@link RegisterClient} on a {@link Simulator} with message delays, drops and partitions,
+ * one simulation per seed, and checks that no client ever observes a committed value change. a failing seed is printed
+ * and can be replayed with --first-seed=seed --seeds=1.
+ * <p>
+ * options: --target=log|register|both (both), --first-seed (0), --seeds (1000), --clients (3), --operations per
+ * client (50), --drop-probability (0.05), --partition-probability (0.01), --replicas (3), --phase2 (0 for
+ * majorities) to use flexible quorums with phase 2 quorums of this size, --witnesses (0) to make that many of the
+ * replicas witnesses, --reconfigure (true) to have an extra
+ * process move the register between replicas and replicas + 1 replicas
+ */
+public class SimulationCheck {
+
+    private static final long TIME_LIMIT_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    public static void main(String[] args) {
+        final Options options = new Options(args);
+        final String target = options.getString("target", "both");
+        final long firstSeed = options.getInt("first-seed", 0);
+        final int seeds = options.getInt("seeds", 1000);
+        final int clients = options.getInt("clients", 3);
+        final int operations = options.getInt("operations", 50);
+        final double dropProbability = options.getDouble("drop-probability", 0.05);
+        final double partitionProbability = options.getDouble("partition-probability", 0.01);
+        final int replicas = options.getInt("replicas", 3);
+        final int phase2 = options.getInt("phase2", 0);
+        final QuorumSizes quorumSizes = phase2 == 0 ? QuorumSizes.MAJORITY : QuorumSizes.flexible(phase2);
+        final int witnesses = options.getInt("witnesses", 0);
+        final boolean reconfigure = Boolean.parseBoolean(options.getString("reconfigure", "true"));
+
+        final long start = System.nanoTime();
+        long events = 0;
+        int failures = 0;
+        for (long seed = firstSeed; seed < firstSeed + seeds; seed++) {
+            final Simulator simulator = new Simulator(seed);
+            final SimulatedNetwork network = new SimulatedNetwork(simulator);
+            network.setDropProbability(dropProbability);
+            network.setPartitions(partitionProbability, TimeUnit.MILLISECONDS.toNanos(50));
+            try {
+                if (target.equals("log") || target.equals("both")) {
+                    checkLog(simulator, network, replicas, witnesses, quorumSizes, clients, operations);
+                }
+                if (target.equals("register") || target.equals("both")) {
+                    checkRegister(simulator, network, replicas, witnesses, quorumSizes, clients, operations, reconfigure);
+                }
+            } catch (AssertionError e) {
+                failures++;
+                System.err.println("seed "+seed+" failed");
+                e.printStackTrace(System.err);
+            }
+            events += simulator.getEventCount();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("seeds = %d, failures = %d, events = %d, %.1f seeds/s, %.0f events/s%n", seeds, failures, events, seeds / seconds, events / seconds);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void backoff(Simulator simulator) {
+        simulator.sleep(simulator.random().nextInt((int)TimeUnit.MILLISECONDS.toNanos(5)));
+    }
+
+    /**
+     * clients race to append to one log. every value a client sees at an index, whether it wrote it or read it after
+     * losing the index, must be the same value every other client sees there.
+     */
+    private static void checkLog(Simulator simulator, SimulatedNetwork network, int replicaCount, int witnesses, QuorumSizes quorumSizes, int clients, int operations) {
+        final List<LogReplicaClient> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            final LogReplicaClient replica = new LocalLogReplicaClient();
+            replicas.add(network.log("log"+i, i < witnesses ? new WitnessLogReplicaClient(replica) : replica));
+        }
+        final Map<Long, Integer> committed = new HashMap<>();
+        for (int c = 0; c < clients; c++) {
+            final int clientIndex = c;
+            simulator.spawn("log-client-"+c, () -> {
+                final LogClient client = new LogClient(replicas, ConsensusMetrics.NOOP, network, quorumSizes);
+                long index = 1;
+                for (int op = 0; op < operations; op++) {
+                    final int value = clientIndex * operations + op;
+                    while (true) {
+                        try {
+                            if (client.write(index, Ints.toByteArray(value))) {
+                                observe(committed, index, value);
+                                index++;
+                                break;
+                            }
+                            final byte[] existing = client.read(index);
+                            if (existing == null) throw new AssertionError("write lost index "+index+" but read returned null");
+                            observe(committed, index, Ints.fromByteArray(existing));
+                            index++;
+                        } catch (Exception e) {
+                            backoff(simulator);
+                        }
+                    }
+                }
+            });
+        }
+        if (!simulator.run(TIME_LIMIT_NANOS)) throw new AssertionError("log clients did not finish");
+        network.heal();
+        simulator.spawn("log-verifier", () -> {
+            final LogClient client = new LogClient(replicas, ConsensusMetrics.NOOP, network, quorumSizes);
+            for (Map.Entry<Long, Integer> entry : committed.entrySet()) {
+                final byte[] value = client.read(entry.getKey());
+                if (value == null || Ints.fromByteArray(value) != entry.getValue()) {
+                    throw new AssertionError("index "+entry.getKey()+" changed from "+entry.getValue()+" to "+(value == null ? null : Ints.fromByteArray(value)));
+                }
+            }
+        });
+        if (!simulator.run(simulator.now() + TIME_LIMIT_NANOS)) throw new AssertionError("log verifier did not finish");
+    }
+
+    private static void observe(Map<Long, Integer> committed, long index, int value) {
+        final Integer previous = committed.putIfAbsent(index, value);
+        if (previous != null && previous != value) {
+            throw new AssertionError("index "+index+" changed from "+previous+" to "+value);
+        }
+    }
+
+    /**
+     * clients append unique elements to an array in one register while an optional extra process adds and removes an
+     * extra replica. every value observed must extend or be a prefix of every other value observed, each append must
+     * be in the value returned to its writer, and every acknowledged append must survive to the end.
+     */
+    private static void checkRegister(Simulator simulator, SimulatedNetwork network, int replicaCount, int witnesses, QuorumSizes quorumSizes, int clients, int operations, boolean reconfigure) {
+        final Map<Long, RegisterReplicaClient> replicaClients = new HashMap<>();
+        final List<Long> initialReplicas = new ArrayList<>();
+        for (long replicaId = 1; replicaId <= replicaCount + 1; replicaId++) {
+            final RegisterReplicaClient replica = new LocalRegisterReplicaClient(replicaId);
+            replicaClients.put(replicaId, network.register(replicaId <= witnesses ? new WitnessRegisterReplicaClient(replica) : replica));
+            if (replicaId <= replicaCount) initialReplicas.add(replicaId);
+        }
+        final long extraReplica = replicaCount + 1;
+        final Function<Object, RegisterClient<int[]>> newClient = id -> new RegisterClient<>(initialReplicas, replicaClients::get, new IntArrayTranscoder(), id, 0, ConsensusMetrics.NOOP, network, quorumSizes);
+        final int[][] longest = {new int[0]};
+        final List<Integer> acknowledged = new ArrayList<>();
+        final int[] running = {clients};
+        for (int c = 0; c < clients; c++) {
+            final int clientIndex = c;
+            simulator.spawn("register-client-"+c, () -> {
+                final RegisterClient<int[]> client = newClient.apply("register");
+                int attempt = 0;
+                for (int op = 0; op < operations; op++) {
+                    while (true) {
+                        // a failed attempt may still have been committed, so every attempt appends a distinct element
+                        final int element = clientIndex * operations * 1000 + attempt++;
+                        try {
+                            final int[] value = client.write(ints -> {
+                                final int[] ret = ints == null ? new int[1] : Arrays.copyOf(ints, ints.length + 1);
+                                ret[ret.length - 1] = element;
+                                return ret;
+                            });
+                            if (value[value.length - 1] != element) throw new AssertionError("write returned a value without its own element");
+                            longest[0] = observe(longest[0], value);
+                            acknowledged.add(element);
+                            break;
+                        } catch (Exception e) {
+                            backoff(simulator);
+                        }
+                    }
+                }
+                running[0]--;
+            });
+        }
+        if (reconfigure) {
+            simulator.spawn("register-reconfigure", () -> {
+                final RegisterClient<int[]> client = newClient.apply("register");
+                while (running[0] > 0) {
+                    try {
+                        client.modifyQuorum(current -> current.contains(extraReplica) ? ReplicaUpdate.remove(extraReplica) : ReplicaUpdate.add(extraReplica));
+                    } catch (Exception e) {
+                        // retried on the next iteration
+                    }
+                    backoff(simulator);
+                }
+            });
+        }
+        if (!simulator.run(TIME_LIMIT_NANOS)) throw new AssertionError("register clients did not finish");
+        network.heal();
+        simulator.spawn("register-verifier", () -> {
+            final RegisterClient<int[]> client = newClient.apply("register");
+            final int[] value = client.read();
+            observe(longest[0], value);
+            final List<Integer> elements = Ints.asList(value);
+            for (int element : acknowledged) {
+                if (!elements.contains(element)) throw new AssertionError("acknowledged element "+element+" was lost");
+            }
+            if (elements.size() != elements.stream().distinct().count()) throw new AssertionError("element appended twice");
+        });
+        if (!simulator.run(simulator.now() + TIME_LIMIT_NANOS)) throw new AssertionError("register verifier did not finish");
+    }
+
+    /**
+     * @return the longer of longest and value after checking that one is a prefix of the other
+     */
+    private static int[] observe(int[] longest, int[] value) {
+        final int common = Math.min(longest.length, value.length);
+        for (int i = 0; i < common; i++) {
+            if (longest[i] != value[i]) {
+                throw new AssertionError("diverging values "+Arrays.toString(longest)+" and "+Arrays.toString(value));
+            }
+        }
+        return value.length > longest.length ? value : longest;
+    }
+}
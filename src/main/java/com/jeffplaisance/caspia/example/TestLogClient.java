@@ -19,6 +19,8 @@ package com.jeffplaisance.caspia.example;
 import com.google.common.base.Throwables;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jeffplaisance.caspia.common.RetryExecutor;
+import com.jeffplaisance.caspia.common.RetryPolicy;
 import com.jeffplaisance.caspia.log.LocalLogReplicaClient;
 import com.jeffplaisance.caspia.log.LogClient;
 import com.jeffplaisance.caspia.log.LogReplicaClient;
@@ -27,22 +29,33 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
 
+/**
+ * correctness check for {@link LogClient} under contention and replica failures. every round starts with fresh
+ * replicas and prints "ruh roh" if a client observes a value changing after it was committed. see
+ * {@link LoadGenerator} for throughput and latency.
+ * <p>
+ * options: --rounds (1000), --clients (2), --iterations (10000), --failure-probability (0.2), --delay-probability (0),
+ * --delay-ns (10000)
+ */
 public class TestLogClient {
     private static final ExecutorService threadPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("client-thread-%d").setDaemon(false).build());
 
     public static void main(String[] args) throws Exception {
-        for (int k = 0; k < 1000; k++) {
-            final double failureProbability = 0.2;
-            final double delayProbability = 0;
-            final int delayNs = 10000;
+        final Options options = new Options(args);
+        final int rounds = options.getInt("rounds", 1000);
+        final RetryExecutor retryExecutor = new RetryExecutor(RetryPolicy.DEFAULT);
+        for (int k = 0; k < rounds; k++) {
+            final double failureProbability = options.getFailureProbability(0.2);
+            final double delayProbability = options.getDelayProbability(0);
+            final int delayNs = options.getDelayNs(10000);
             final List<LogClient> clients = new ArrayList<>();
             final List<LogReplicaClient> replicas = Arrays.asList(
                     new LocalLogReplicaClient(failureProbability, delayProbability, delayNs),
                     new LocalLogReplicaClient(failureProbability, delayProbability, delayNs),
                     new LocalLogReplicaClient(failureProbability, delayProbability, delayNs)
             );
-            final int numClients = 2;
-            final int iterations = 10000;
+            final int numClients = options.getInt("clients", 2);
+            final int iterations = options.getInt("iterations", 10000);
             final CyclicBarrier barrier = new CyclicBarrier(numClients+1);
             for (int i = 0; i < numClients; i++) {
                 final LogClient client = new LogClient(replicas);
@@ -51,12 +64,13 @@ public class TestLogClient {
                 threadPool.submit(() -> {
                     final ArrayList<Integer> claimedIndexes = new ArrayList<>();
                     for (int i1 = 1; i1 <= iterations; i1++) {
+                        final int index = i1;
                         while (true) {
                             try {
-                                if (client.write(i1, Ints.toByteArray(clientIndex))) {
+                                if (retryExecutor.call(() -> client.write(index, Ints.toByteArray(clientIndex)), client::hasFastPath)) {
                                     claimedIndexes.add(i1);
                                 } else {
-                                    final int newIndex = (int) client.readLastIndex();
+                                    final int newIndex = (int)(long) retryExecutor.call(client::readLastIndex);
                                     //System.out.printf("client %d skipping from %d to %d\r\n", clientIndex, i1, newIndex);
                                     i1 = Math.max(i1, newIndex-1);
                                 }
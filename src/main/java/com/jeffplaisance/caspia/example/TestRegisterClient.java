@@ -17,33 +17,41 @@ limitations under the License.
 package com.jeffplaisance.caspia.example;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.jeffplaisance.caspia.common.Transcoder;
+import com.jeffplaisance.caspia.common.IntArrayTranscoder;
 import com.jeffplaisance.caspia.register.LocalRegisterReplicaClient;
 import com.jeffplaisance.caspia.register.RegisterClient;
 import com.jeffplaisance.caspia.register.RegisterReplicaClient;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
 
+/**
+ * correctness check for {@link RegisterClient} under contention and replica failures. clients append to an array in a
+ * single register and "ruh roh" is printed if any client observes a lost or reordered append. see
+ * {@link LoadGenerator} for throughput and latency.
+ * <p>
+ * options: --rounds (1000), --clients (2), --iterations (10000), --failure-probability (0.2),
+ * --delay-probability (0.01), --delay-ns (10000)
+ */
 public class TestRegisterClient {
 
     private static final ExecutorService threadPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("client-thread-%d").setDaemon(false).build());
 
     public static void main(String[] args) throws Exception {
-        for (int k = 0; k < 1000; k++) {
+        final Options options = new Options(args);
+        final int rounds = options.getInt("rounds", 1000);
+        for (int k = 0; k < rounds; k++) {
             final List<RegisterClient<int[]>> clients = new ArrayList<>();
             final List<Long> replicas = Arrays.asList(1L, 2L, 3L);
             final ConcurrentMap<Long, RegisterReplicaClient> replicaClients = new ConcurrentHashMap<>();
             final String id = "jeff";
-            final int numClients = 2;
-            final double failureProbability = 0.2;
-            final double delayProbability = 0.01;
-            final int delayNs = 10000;
-            final int iterations = 10000;
+            final int numClients = options.getInt("clients", 2);
+            final double failureProbability = options.getFailureProbability(0.2);
+            final double delayProbability = options.getDelayProbability(0.01);
+            final int delayNs = options.getDelayNs(10000);
+            final int iterations = options.getInt("iterations", 10000);
             final ExecutorCompletionService ecs = new ExecutorCompletionService(threadPool);
             for (int i = 0; i < numClients; i++) {
                 final RegisterClient<int[]> client = new RegisterClient<>(replicas, replica -> replicaClients.computeIfAbsent(replica, replicaId -> new LocalRegisterReplicaClient(replicaId, failureProbability, delayProbability, delayNs)), new IntArrayTranscoder(), id);
@@ -126,29 +134,4 @@ public class TestRegisterClient {
         }
         System.exit(0);
     }
-
-    private static final class IntArrayTranscoder implements Transcoder<int[]> {
-
-        @Override
-        public byte[] toBytes(int[] ints) {
-            final byte[] out = new byte[ints.length*4];
-            final ByteBuffer buffer = ByteBuffer.wrap(out);
-            buffer.order(ByteOrder.nativeOrder());
-            for (int i : ints) {
-                buffer.putInt(i);
-            }
-            return out;
-        }
-
-        @Override
-        public int[] fromBytes(byte[] bytes) {
-            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
-            buffer.order(ByteOrder.nativeOrder());
-            final int[] ret = new int[bytes.length/4];
-            for (int i = 0; i < ret.length; i++) {
-                ret[i] = buffer.getInt();
-            }
-            return ret;
-        }
-    }
 }
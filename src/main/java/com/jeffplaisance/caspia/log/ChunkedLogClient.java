@@ -0,0 +1,74 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.jeffplaisance.caspia.chunk.ChunkedValues;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.InputStream;
+
+/**
+ * a log of arbitrarily large entries. each entry is written to the chunk stores first and only its manifest is written
+ * to the log, so the log replicas and the consensus rounds only ever handle a few bytes per megabyte of entry. registers
+ * can hold large values the same way by storing the manifest from {@link ChunkedValues#write(InputStream)}.
+ */
+@NotThreadSafe
+public final class ChunkedLogClient {
+
+    private final LogClient log;
+    private final ChunkedValues chunks;
+
+    public ChunkedLogClient(LogClient log, ChunkedValues chunks) {
+        this.log = log;
+        this.chunks = chunks;
+    }
+
+    /**
+     * @param index the index
+     * @param value the entry, read to the end but not closed
+     * @return see {@link LogClient#write(long, byte[])}. the chunks of an entry which was not committed are not removed.
+     * @throws Exception if the entry could not be stored or the write to the log fails
+     */
+    public boolean write(long index, InputStream value) throws Exception {
+        return log.write(index, chunks.write(value));
+    }
+
+    /**
+     * @param index the index
+     * @return a stream of the entry at index or null if no value has been written at the index
+     * @throws Exception if the read from the log fails. failures to read the entry itself are thrown by the stream.
+     */
+    public @Nullable InputStream read(long index) throws Exception {
+        final byte[] manifest = log.read(index);
+        return manifest == null ? null : chunks.read(manifest);
+    }
+
+    /**
+     * @param index the index
+     * @return the length of the entry at index or -1 if no value has been written at the index
+     * @throws Exception if the read from the log fails
+     */
+    public long readLength(long index) throws Exception {
+        final byte[] manifest = log.read(index);
+        return manifest == null ? -1 : ChunkedValues.getLength(manifest);
+    }
+
+    public LogClient getLog() {
+        return log;
+    }
+}
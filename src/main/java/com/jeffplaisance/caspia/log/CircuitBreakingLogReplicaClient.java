@@ -0,0 +1,80 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.jeffplaisance.caspia.common.CircuitBreaker;
+
+import java.util.List;
+
+/**
+ * guards a replica with a {@link CircuitBreaker}. wrap each replica once and share the wrapper between clients so that
+ * they share the replica's health and in flight limit.
+ */
+public final class CircuitBreakingLogReplicaClient implements LogReplicaClient, CircuitBreaker.Guarded {
+
+    private final LogReplicaClient delegate;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakingLogReplicaClient(LogReplicaClient delegate) {
+        this(delegate, new CircuitBreaker());
+    }
+
+    public CircuitBreakingLogReplicaClient(LogReplicaClient delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public LogReplicaState read(long index) throws Exception {
+        return breaker.call(() -> delegate.read(index));
+    }
+
+    @Override
+    public LogReplicaState readMetadata(long index) throws Exception {
+        return breaker.call(() -> delegate.readMetadata(index));
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        return breaker.call(() -> delegate.compareAndSetProposal(id, proposal, expect));
+    }
+
+    @Override
+    public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+        return breaker.call(() -> delegate.writeAtomic(id, update, expect_absent, expect));
+    }
+
+    @Override
+    public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        return breaker.call(() -> delegate.writeBatch(writes));
+    }
+
+    @Override
+    public long readLastIndex() throws Exception {
+        return breaker.call(delegate::readLastIndex);
+    }
+
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+}
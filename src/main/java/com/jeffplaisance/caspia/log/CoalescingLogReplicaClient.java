@@ -0,0 +1,87 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.jeffplaisance.caspia.common.WriteCombiner;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+
+/**
+ * combines concurrent writes to a replica from every {@link LogClient} sharing this client into batches, so many logs
+ * in one process writing to the same replica cost one round trip per batch instead of one per write. each batch is
+ * sent with {@link LogReplicaClient#writeBatch(List)}, which {@link JDBCLogReplicaClient} sends as JDBC batches on a
+ * single connection. reads are not combined.
+ * <p>
+ * create one instance per replica and share it between clients. every decorator forwards
+ * {@link LogReplicaClient#writeBatch(List)}, so this can wrap a decorated replica, which then sees one call per batch.
+ */
+@ThreadSafe
+public final class CoalescingLogReplicaClient implements LogReplicaClient {
+
+    private final LogReplicaClient delegate;
+    private final WriteCombiner<LogReplicaWrite> combiner;
+
+    public CoalescingLogReplicaClient(LogReplicaClient delegate) {
+        this(delegate, 256, 0);
+    }
+
+    /**
+     * @param delegate the replica
+     * @param maxBatchSize the maximum number of writes sent in one batch
+     * @param lingerMicros how long to wait for more writes before sending a batch, see {@link WriteCombiner}
+     */
+    public CoalescingLogReplicaClient(LogReplicaClient delegate, int maxBatchSize, long lingerMicros) {
+        this.delegate = delegate;
+        this.combiner = new WriteCombiner<>(delegate::writeBatch, maxBatchSize, lingerMicros);
+    }
+
+    @Override
+    public LogReplicaState read(long index) throws Exception {
+        return delegate.read(index);
+    }
+
+    @Override
+    public LogReplicaState readMetadata(long index) throws Exception {
+        return delegate.readMetadata(index);
+    }
+
+    @Override
+    public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        return combiner.write(LogReplicaWrite.compareAndSetProposal(id, proposal, expect));
+    }
+
+    @Override
+    public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+        return combiner.write(LogReplicaWrite.writeAtomic(id, update, expect_absent, expect));
+    }
+
+    @Override
+    public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        return delegate.writeBatch(writes);
+    }
+
+    @Override
+    public long readLastIndex() throws Exception {
+        return delegate.readLastIndex();
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+}
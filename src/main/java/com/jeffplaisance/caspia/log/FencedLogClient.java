@@ -0,0 +1,198 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.google.common.primitives.Longs;
+import com.jeffplaisance.caspia.common.Transcoder;
+import com.jeffplaisance.caspia.register.LeaderElection;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * a log which only the leader chosen by a {@link LeaderElection} writes to. every entry is stamped with the epoch of the
+ * leader which wrote it. a leader which has been deposed but doesn't know it yet, for example because it paused
+ * between checking its lease and writing, can still get an entry into the log, so whatever applies the log must drop
+ * any entry whose epoch is lower than the epoch of an entry before it. {@link #read(long)} does this for entries read
+ * in order.
+ * <p>
+ * the fence depends on every entry before the one being read, so a reader which doesn't start at the first index must
+ * start from the highest epoch of the entries it skipped. a {@link ReplicatedStateMachine} should use
+ * {@link #transition(BiFunction)}, which keeps the highest epoch in the state, so that an instance recovering from a
+ * snapshot fences exactly the entries that an instance replaying the whole log does. propose entries stamped with
+ * {@link #stamp(byte[])}.
+ */
+@NotThreadSafe
+public final class FencedLogClient {
+
+    private final LogClient log;
+    private final LeaderElection election;
+    // highest epoch read so far
+    private long maxEpoch = 0;
+
+    public FencedLogClient(LogClient log, LeaderElection election) {
+        this(log, election, 0);
+    }
+
+    /**
+     * @param log the log
+     * @param election the election whose leader writes to the log
+     * @param maxEpoch the highest epoch of the entries before the first index this client will read, for example
+     * {@link State#getMaxEpoch()} of a snapshot. 0 to read from the first index.
+     */
+    public FencedLogClient(LogClient log, LeaderElection election, long maxEpoch) {
+        this.log = log;
+        this.election = election;
+        this.maxEpoch = maxEpoch;
+    }
+
+    /**
+     * @return see {@link LogClient#write(long, byte[])}
+     * @throws Exception if this process is not the leader or if the write fails
+     */
+    public boolean write(long index, byte[] value) throws Exception {
+        return log.write(index, stamp(value));
+    }
+
+    /**
+     * @param value the entry
+     * @return value stamped with the epoch of this process's lease, for {@link ReplicatedStateMachine#propose(byte[])}
+     * @throws Exception if this process is not the leader
+     */
+    public byte[] stamp(byte[] value) throws Exception {
+        final long epoch = election.getEpoch();
+        if (epoch == 0) throw new Exception("not the leader");
+        return stamp(epoch, value);
+    }
+
+    static byte[] stamp(long epoch, byte[] value) {
+        final byte[] entry = new byte[8 + value.length];
+        System.arraycopy(Longs.toByteArray(epoch), 0, entry, 0, 8);
+        System.arraycopy(value, 0, entry, 8, value.length);
+        return entry;
+    }
+
+    /**
+     * reads the entry at index. entries must be read in increasing index order for fencing to work.
+     * @return the entry at index or null if no value has been written at the index
+     */
+    public @Nullable Entry read(long index) throws Exception {
+        final byte[] bytes = log.read(index);
+        if (bytes == null) return null;
+        final long epoch = Longs.fromByteArray(bytes);
+        final boolean fenced = epoch < maxEpoch;
+        if (!fenced) maxEpoch = epoch;
+        return new Entry(epoch, Arrays.copyOfRange(bytes, 8, bytes.length), fenced);
+    }
+
+    public LogClient getLog() {
+        return log;
+    }
+
+    /**
+     * @return the highest epoch of the entries read so far which were not fenced
+     */
+    public long getMaxEpoch() {
+        return maxEpoch;
+    }
+
+    /**
+     * @param transition the transition of the unfenced state machine, applied to the entries without their epochs
+     * @return a transition which drops fenced entries and tracks the highest epoch in the state. start from
+     * {@code new State<>(0, initialState)}.
+     */
+    public static <S> BiFunction<State<S>, byte[], State<S>> transition(BiFunction<S, byte[], S> transition) {
+        return (state, entry) -> {
+            final long epoch = Longs.fromByteArray(entry);
+            if (epoch < state.maxEpoch) return state;
+            return new State<>(epoch, transition.apply(state.state, Arrays.copyOfRange(entry, 8, entry.length)));
+        };
+    }
+
+    /**
+     * @param transcoder the transcoder for the unfenced state
+     * @return a transcoder for snapshots of states produced by {@link #transition(BiFunction)}, encoded as the 8 byte
+     * epoch followed by the state
+     */
+    public static <S> Transcoder<State<S>> transcoder(Transcoder<S> transcoder) {
+        return new Transcoder<State<S>>() {
+            @Override
+            public byte[] toBytes(State<S> state) {
+                return stamp(state.maxEpoch, transcoder.toBytes(state.state));
+            }
+
+            @Override
+            public State<S> fromBytes(byte[] bytes) {
+                return new State<>(Longs.fromByteArray(bytes), transcoder.fromBytes(Arrays.copyOfRange(bytes, 8, bytes.length)));
+            }
+        };
+    }
+
+    /**
+     * the state of a fenced state machine, see {@link #transition(BiFunction)}
+     */
+    public static final class State<S> {
+        private final long maxEpoch;
+        private final S state;
+
+        public State(long maxEpoch, S state) {
+            this.maxEpoch = maxEpoch;
+            this.state = state;
+        }
+
+        /**
+         * @return the highest epoch of the entries applied so far, entries with a lower epoch are fenced
+         */
+        public long getMaxEpoch() {
+            return maxEpoch;
+        }
+
+        public S getState() {
+            return state;
+        }
+    }
+
+    public static final class Entry {
+        private final long epoch;
+        private final byte[] value;
+        private final boolean fenced;
+
+        private Entry(long epoch, byte[] value, boolean fenced) {
+            this.epoch = epoch;
+            this.value = value;
+            this.fenced = fenced;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        /**
+         * @return true if an entry with a higher epoch was read at a lower index, which means this entry was written
+         * by a deposed leader and must be ignored
+         */
+        public boolean isFenced() {
+            return fenced;
+        }
+    }
+}
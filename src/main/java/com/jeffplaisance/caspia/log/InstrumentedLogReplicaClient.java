@@ -0,0 +1,108 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.jeffplaisance.caspia.common.CircuitBreaker;
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.ReplicaCallEvent;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * reports the latency, outcome and bytes written of every call to a replica to the metrics and to flight recorder
+ */
+final class InstrumentedLogReplicaClient implements LogReplicaClient, CircuitBreaker.Guarded {
+
+    private final LogReplicaClient delegate;
+    private final String name;
+    private final ConsensusMetrics metrics;
+
+    InstrumentedLogReplicaClient(LogReplicaClient delegate, String name, ConsensusMetrics metrics) {
+        this.delegate = delegate;
+        this.name = name;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public LogReplicaState read(long index) throws Exception {
+        return instrument("read", index, false, 0, () -> delegate.read(index));
+    }
+
+    @Override
+    public LogReplicaState readMetadata(long index) throws Exception {
+        return instrument("readMetadata", index, false, 0, () -> delegate.readMetadata(index));
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        return instrument("compareAndSetProposal", id, false, 0, () -> delegate.compareAndSetProposal(id, proposal, expect));
+    }
+
+    @Override
+    public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+        return instrument(expect_absent ? "putIfAbsent" : "compareAndSet", id, true, update.getValueLength(), () -> delegate.writeAtomic(id, update, expect_absent, expect));
+    }
+
+    @Override
+    public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        long valueSize = 0;
+        for (LogReplicaWrite write : writes) {
+            if (write.getUpdate() != null) valueSize += write.getUpdate().getValueLength();
+        }
+        return instrument("writeBatch", writes.size(), true, valueSize, () -> delegate.writeBatch(writes));
+    }
+
+    @Override
+    public long readLastIndex() throws Exception {
+        return instrument("readLastIndex", null, false, 0, delegate::readLastIndex);
+    }
+
+    /**
+     * @param operation the method called on the replica
+     * @param key the log index, the number of writes for a batch, null if the operation has no key
+     * @param write true to report valueSize to the metrics as bytes written
+     * @param valueSize the size of the value written, 0 for reads
+     * @param call calls the delegate. a Boolean result is reported as whether the call was applied.
+     */
+    private <T> T instrument(String operation, @Nullable Object key, boolean write, long valueSize, Callable<T> call) throws Exception {
+        final ReplicaCallEvent event = ReplicaCallEvent.beginIfEnabled();
+        final long start = System.nanoTime();
+        boolean success = false;
+        T ret = null;
+        try {
+            ret = call.call();
+            success = true;
+            return ret;
+        } finally {
+            metrics.replicaCall(name, System.nanoTime() - start, success);
+            if (write) metrics.bytesWritten(name, valueSize);
+            if (event != null) event.finish(name, operation, key, success, ret instanceof Boolean ? (Boolean) ret : success, valueSize);
+        }
+    }
+
+    @Override
+    public @Nullable CircuitBreaker getCircuitBreaker() {
+        return delegate instanceof CircuitBreaker.Guarded ? ((CircuitBreaker.Guarded) delegate).getCircuitBreaker() : null;
+    }
+}
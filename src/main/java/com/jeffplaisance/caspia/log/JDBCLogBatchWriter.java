@@ -0,0 +1,156 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import javax.annotation.concurrent.Immutable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * sends {@link LogReplicaWrite}s to a JDBC log replica as at most three JDBC batches on one connection, one each for
+ * proposals, updates and inserts. shared by {@link JDBCLogReplicaClient} and {@link JDBCMultiLogReplica}.
+ * <p>
+ * the outcome of every write is taken from its own update count, leave rewriteBatchedStatements and useBulkStmts off.
+ * a write whose count the driver doesn't report may or may not have been applied, and the row can't tell which of
+ * several writers of the same ballot won, so the whole batch fails as if the replica had timed out.
+ */
+@Immutable
+final class JDBCLogBatchWriter {
+
+    private final boolean multiLog;
+    private final String proposalSql;
+    private final String updateSql;
+    private final String insertSql;
+
+    private JDBCLogBatchWriter(String table, boolean multiLog) {
+        this.multiLog = multiLog;
+        final String key = multiLog ? "log_id = ? AND id = ?" : "id = ?";
+        proposalSql = "update "+table+" set proposal = ? where "+key+" AND proposal = ? AND accepted = ?";
+        updateSql = "update "+table+" set proposal = ?, accepted = ?, val = ? where "+key+" AND proposal = ? AND accepted = ?";
+        insertSql = "insert ignore into "+table+" ("+(multiLog ? "log_id, " : "")+"id, proposal, accepted, val) values ("+(multiLog ? "?, " : "")+"?, ?, ?, ?)";
+    }
+
+    /**
+     * @param table a table holding one log keyed by id, see src/main/db/create_log.sql
+     */
+    static JDBCLogBatchWriter singleLog(String table) {
+        return new JDBCLogBatchWriter(table, false);
+    }
+
+    /**
+     * @param table a table holding many logs keyed by (log_id, id), see src/main/db/create_logs.sql
+     */
+    static JDBCLogBatchWriter multiLog(String table) {
+        return new JDBCLogBatchWriter(table, true);
+    }
+
+    /**
+     * writes to a single log table
+     */
+    boolean[] writeBatch(Connection c, List<LogReplicaWrite> writes) throws SQLException {
+        if (multiLog) throw new IllegalStateException("writes to a multi-log table need a log id");
+        return writeBatch(c, writes, write -> write, write -> 0);
+    }
+
+    /**
+     * @param c the connection
+     * @param writes the writes
+     * @param toWrite the conditional write of each element of writes
+     * @param logId the log of each element of writes, ignored for a single log table
+     * @return whether each write was applied, in the order of writes
+     * @throws SQLException if any batch failed or any write's outcome is unknown
+     */
+    <W> boolean[] writeBatch(Connection c, List<W> writes, Function<? super W, LogReplicaWrite> toWrite, ToLongFunction<? super W> logId) throws SQLException {
+        final boolean[] ret = new boolean[writes.size()];
+        final List<Integer> proposals = new ArrayList<>();
+        final List<Integer> updates = new ArrayList<>();
+        final List<Integer> inserts = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            final LogReplicaWrite write = toWrite.apply(writes.get(i));
+            (write.getExpect() == null ? inserts : write.getUpdate() == null ? proposals : updates).add(i);
+        }
+        if (!proposals.isEmpty()) {
+            try (final PreparedStatement ps = c.prepareStatement(proposalSql)) {
+                for (int i : proposals) {
+                    final LogReplicaWrite write = toWrite.apply(writes.get(i));
+                    ps.setInt(1, write.getProposal());
+                    int parameterIndex = setKey(ps, 2, logId.applyAsLong(writes.get(i)), write.getId());
+                    ps.setInt(parameterIndex++, write.getExpect().getProposal());
+                    ps.setInt(parameterIndex, write.getExpect().getAccepted());
+                    ps.addBatch();
+                }
+                complete(proposals, ps.executeBatch(), ret);
+            }
+        }
+        if (!updates.isEmpty()) {
+            try (final PreparedStatement ps = c.prepareStatement(updateSql)) {
+                for (int i : updates) {
+                    final LogReplicaWrite write = toWrite.apply(writes.get(i));
+                    ps.setInt(1, write.getUpdate().getProposal());
+                    ps.setInt(2, write.getUpdate().getAccepted());
+                    JDBCLogReplicaClient.setValue(ps, 3, write.getUpdate());
+                    int parameterIndex = setKey(ps, 4, logId.applyAsLong(writes.get(i)), write.getId());
+                    ps.setInt(parameterIndex++, write.getExpect().getProposal());
+                    ps.setInt(parameterIndex, write.getExpect().getAccepted());
+                    ps.addBatch();
+                }
+                complete(updates, ps.executeBatch(), ret);
+            }
+        }
+        if (!inserts.isEmpty()) {
+            try (final PreparedStatement ps = c.prepareStatement(insertSql)) {
+                for (int i : inserts) {
+                    final LogReplicaWrite write = toWrite.apply(writes.get(i));
+                    int parameterIndex = setKey(ps, 1, logId.applyAsLong(writes.get(i)), write.getId());
+                    ps.setInt(parameterIndex++, write.getUpdate().getProposal());
+                    ps.setInt(parameterIndex++, write.getUpdate().getAccepted());
+                    JDBCLogReplicaClient.setValue(ps, parameterIndex, write.getUpdate());
+                    ps.addBatch();
+                }
+                complete(inserts, ps.executeBatch(), ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the index of the parameter after the key
+     */
+    private int setKey(PreparedStatement ps, int parameterIndex, long logId, long id) throws SQLException {
+        if (multiLog) ps.setLong(parameterIndex++, logId);
+        ps.setLong(parameterIndex++, id);
+        return parameterIndex;
+    }
+
+    private static void complete(List<Integer> batch, int[] updateCounts, boolean[] ret) throws SQLException {
+        for (int i = 0; i < batch.size(); i++) {
+            final int count = updateCounts[i];
+            if (count == Statement.SUCCESS_NO_INFO) {
+                throw new SQLException("no update count for write "+batch.get(i)+" of the batch, disable rewriteBatchedStatements");
+            } else if (count == Statement.EXECUTE_FAILED) {
+                throw new SQLException("write "+batch.get(i)+" of the batch failed");
+            }
+            ret[batch.get(i)] = count > 0;
+        }
+    }
+}
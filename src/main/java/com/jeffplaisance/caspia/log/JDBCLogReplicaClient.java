@@ -18,19 +18,25 @@ package com.jeffplaisance.caspia.log;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
 
 public final class JDBCLogReplicaClient implements LogReplicaClient {
 
     private final DataSource ds;
     private final String table;
+    private final JDBCLogBatchWriter batchWriter;
     private boolean enabled = true;
 
     public JDBCLogReplicaClient(DataSource ds, String table) {
         this.ds = ds;
         this.table = table;
+        this.batchWriter = JDBCLogBatchWriter.singleLog(table);
     }
 
     @Override
@@ -48,6 +54,36 @@ public final class JDBCLogReplicaClient implements LogReplicaClient {
         }
     }
 
+    @Override
+    public LogReplicaState readMetadata(long id) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                final PreparedStatement ps = c.prepareStatement("select proposal, accepted, val is not null from "+table+" where id = ?")
+        ) {
+            ps.setLong(1, id);
+            try (final ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return LogReplicaState.EMPTY;
+                return LogReplicaState.metadata(rs.getInt(1), rs.getInt(2), rs.getBoolean(3));
+            }
+        }
+    }
+
+    @Override
+    public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                PreparedStatement ps = c.prepareStatement("update "+table+" set proposal = ? where id = ? AND proposal = ? AND accepted = ?")
+        ) {
+            ps.setInt(1, proposal);
+            ps.setLong(2, id);
+            ps.setInt(3, expect.getProposal());
+            ps.setInt(4, expect.getAccepted());
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     @Override
     public boolean compareAndSet(long id, LogReplicaState update, LogReplicaState expect) throws Exception {
         if (!enabled) throw new IOException();
@@ -57,7 +93,7 @@ public final class JDBCLogReplicaClient implements LogReplicaClient {
         ) {
             ps.setInt(1, update.getProposal());
             ps.setInt(2, update.getAccepted());
-            ps.setBytes(3, update.getValue());
+            setValue(ps, 3, update);
             ps.setLong(4, id);
             ps.setInt(5, expect.getProposal());
             ps.setInt(6, expect.getAccepted());
@@ -75,11 +111,23 @@ public final class JDBCLogReplicaClient implements LogReplicaClient {
             ps.setLong(1, id);
             ps.setInt(2, update.getProposal());
             ps.setInt(3, update.getAccepted());
-            ps.setBytes(4, update.getValue());
+            setValue(ps, 4, update);
             return ps.executeUpdate() > 0;
         }
     }
 
+    /**
+     * sends the writes as at most three JDBC batches on one connection, see {@link CoalescingLogReplicaClient} and
+     * {@link JDBCLogBatchWriter}.
+     */
+    @Override
+    public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        if (!enabled) throw new IOException();
+        try (final Connection c = ds.getConnection()) {
+            return batchWriter.writeBatch(c, writes);
+        }
+    }
+
     @Override
     public long readLastIndex() throws Exception {
         if (!enabled) throw new IOException();
@@ -96,4 +144,43 @@ public final class JDBCLogReplicaClient implements LogReplicaClient {
     public boolean setEnabled(boolean enabled) {
         return this.enabled = enabled;
     }
+
+    /**
+     * binds the value of state without copying it. values which are not backed by an exact byte[], such as direct
+     * buffers, are streamed to the driver.
+     */
+    static void setValue(PreparedStatement ps, int parameterIndex, LogReplicaState state) throws SQLException {
+        if (state.hasArray()) {
+            ps.setBytes(parameterIndex, state.getArray());
+        } else {
+            ps.setBinaryStream(parameterIndex, new ByteBufferInputStream(state.getValueBuffer()), state.getValueLength());
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
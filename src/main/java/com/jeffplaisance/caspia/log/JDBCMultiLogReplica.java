@@ -0,0 +1,193 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.jeffplaisance.caspia.common.WriteCombiner;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+/**
+ * one replica of many logs stored in a single table keyed by (log_id, id), see src/main/db/create_logs.sql. use
+ * {@link #getLog(long)} to get the {@link LogReplicaClient} for a log.
+ * <p>
+ * writes from all logs on this replica are multiplexed: concurrent writes are queued and whichever thread acquires the
+ * replica first sends every queued write in a single JDBC batch on one connection, see {@link WriteCombiner}, so hundreds
+ * of logs with a few writes each cost one round trip to the database instead of one per write. the MariaDB driver
+ * pipelines batches by default. leave rewriteBatchedStatements and useBulkStmts off, see {@link JDBCLogBatchWriter}.
+ * <p>
+ * {@link LogReplicaClient#writeBatch(List)} on a log sends its writes in one round trip, so a
+ * {@link CoalescingLogReplicaClient} in front of a log works as it does for {@link JDBCLogReplicaClient}.
+ */
+@ThreadSafe
+public final class JDBCMultiLogReplica {
+
+    private final DataSource ds;
+    private final String table;
+    private final JDBCLogBatchWriter batchWriter;
+    private final WriteCombiner<MultiLogWrite> combiner;
+    private volatile boolean enabled = true;
+
+    public JDBCMultiLogReplica(DataSource ds, String table) {
+        this(ds, table, 256);
+    }
+
+    /**
+     * @param ds the replica database
+     * @param table the table holding every log on this replica
+     * @param maxBatchSize the maximum number of writes sent in one batch
+     */
+    public JDBCMultiLogReplica(DataSource ds, String table, int maxBatchSize) {
+        this.ds = ds;
+        this.table = table;
+        this.batchWriter = JDBCLogBatchWriter.multiLog(table);
+        this.combiner = new WriteCombiner<>(this::writeBatch, maxBatchSize, 0);
+    }
+
+    /**
+     * @param logId the log id
+     * @return the replica client for logId. clients are cheap and share this replica's write batches.
+     */
+    public LogReplicaClient getLog(long logId) {
+        return new Log(logId);
+    }
+
+    public boolean setEnabled(boolean enabled) {
+        return this.enabled = enabled;
+    }
+
+    private LogReplicaState read(long logId, long id) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                final PreparedStatement ps = c.prepareStatement("select proposal, accepted, val from "+table+" where log_id = ? and id = ?")
+        ) {
+            ps.setLong(1, logId);
+            ps.setLong(2, id);
+            try (final ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return LogReplicaState.EMPTY;
+                return new LogReplicaState(rs.getInt(1), rs.getInt(2), rs.getBytes(3));
+            }
+        }
+    }
+
+    private LogReplicaState readMetadata(long logId, long id) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                final PreparedStatement ps = c.prepareStatement("select proposal, accepted, val is not null from "+table+" where log_id = ? and id = ?")
+        ) {
+            ps.setLong(1, logId);
+            ps.setLong(2, id);
+            try (final ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return LogReplicaState.EMPTY;
+                return LogReplicaState.metadata(rs.getInt(1), rs.getInt(2), rs.getBoolean(3));
+            }
+        }
+    }
+
+    private long readLastIndex(long logId) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                final PreparedStatement ps = c.prepareStatement("select max(id) from "+table+" where log_id = ?")
+        ) {
+            ps.setLong(1, logId);
+            try (final ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return 0;
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private boolean write(long logId, LogReplicaWrite write) throws Exception {
+        if (!enabled) throw new IOException();
+        return combiner.write(new MultiLogWrite(logId, write));
+    }
+
+    private boolean[] writeBatch(List<MultiLogWrite> writes) throws Exception {
+        if (!enabled) throw new IOException();
+        try (final Connection c = ds.getConnection()) {
+            return batchWriter.writeBatch(c, writes, write -> write.write, write -> write.logId);
+        }
+    }
+
+    private boolean[] writeBatch(long logId, List<LogReplicaWrite> writes) throws Exception {
+        if (!enabled) throw new IOException();
+        try (final Connection c = ds.getConnection()) {
+            return batchWriter.writeBatch(c, writes, write -> write, write -> logId);
+        }
+    }
+
+    private final class Log implements LogReplicaClient {
+        private final long logId;
+
+        private Log(long logId) {
+            this.logId = logId;
+        }
+
+        @Override
+        public LogReplicaState read(long index) throws Exception {
+            return JDBCMultiLogReplica.this.read(logId, index);
+        }
+
+        @Override
+        public LogReplicaState readMetadata(long index) throws Exception {
+            return JDBCMultiLogReplica.this.readMetadata(logId, index);
+        }
+
+        @Override
+        public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+            return write(logId, LogReplicaWrite.compareAndSetProposal(id, proposal, expect));
+        }
+
+        @Override
+        public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+            return write(logId, LogReplicaWrite.writeAtomic(id, update, expect_absent, expect));
+        }
+
+        /**
+         * sends writes in one round trip without waiting for writes from other logs
+         */
+        @Override
+        public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+            return JDBCMultiLogReplica.this.writeBatch(logId, writes);
+        }
+
+        @Override
+        public long readLastIndex() throws Exception {
+            return JDBCMultiLogReplica.this.readLastIndex(logId);
+        }
+    }
+
+    @Immutable
+    private static final class MultiLogWrite {
+        private final long logId;
+        private final LogReplicaWrite write;
+
+        private MultiLogWrite(long logId, LogReplicaWrite write) {
+            this.logId = logId;
+            this.write = write;
+        }
+    }
+}
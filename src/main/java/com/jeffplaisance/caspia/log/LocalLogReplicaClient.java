@@ -16,106 +16,106 @@ limitations under the License.
 
 package com.jeffplaisance.caspia.log;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import com.google.common.base.Preconditions;
 
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * in memory replica. lock free, entries are kept in chunks which are allocated the first time an index in them is
+ * written and only the current state of each index is retained. can inject failures and delays for testing.
+ */
+@ThreadSafe
 public final class LocalLogReplicaClient implements LogReplicaClient {
 
-    private final List<List<LogReplicaState>> data = new ArrayList<>();
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+
+    private final AtomicReferenceArray<AtomicReferenceArray<LogReplicaState>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicLong lastIndex = new AtomicLong();
     private final double failureProbability;
     private final double delayProbability;
     private final int delayNs;
-    private final Random random = new Random();
+
+    public LocalLogReplicaClient() {
+        this(0, 0, 0);
+    }
 
     public LocalLogReplicaClient(double failureProbability, double delayProbability, int delayNs) {
         this.failureProbability = failureProbability;
         this.delayProbability = delayProbability;
         this.delayNs = delayNs;
-        data.add(null);
     }
 
     private void doNemesis() throws Exception {
-        if (random.nextDouble() < delayProbability) {
-            int delay = random.nextInt(delayNs) + 1;
-            if (delay > 0) Thread.sleep(delay / 1000000, delay % 1000000);
+        if (delayProbability > 0 || failureProbability > 0) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < delayProbability) {
+                int delay = random.nextInt(delayNs) + 1;
+                if (delay > 0) Thread.sleep(delay / 1000000, delay % 1000000);
+            }
+            if (random.nextDouble() < failureProbability) throw new Exception();
         }
-        if (random.nextDouble() < failureProbability) throw new Exception();
+    }
+
+    private static int chunkIndex(long index) {
+        Preconditions.checkArgument(index >= 0 && index < (long)MAX_CHUNKS * CHUNK_SIZE, "index out of range: %s", index);
+        return (int)(index >>> CHUNK_BITS);
+    }
+
+    private AtomicReferenceArray<LogReplicaState> getOrCreateChunk(int chunkIndex) {
+        final AtomicReferenceArray<LogReplicaState> chunk = chunks.get(chunkIndex);
+        if (chunk != null) return chunk;
+        final AtomicReferenceArray<LogReplicaState> newChunk = new AtomicReferenceArray<>(CHUNK_SIZE);
+        // if we lose the race to allocate the chunk use the winner's
+        return chunks.compareAndSet(chunkIndex, null, newChunk) ? newChunk : chunks.get(chunkIndex);
     }
 
     @Override
     public LogReplicaState read(long index) throws Exception {
         doNemesis();
-        final List<LogReplicaState> list;
-        synchronized (data) {
-            if (index >= data.size()) {
-                return LogReplicaState.EMPTY;
-            }
-            list = data.get((int) index);
-            if (list == null) {
-                return LogReplicaState.EMPTY;
-            }
-        }
-        synchronized (list) {
-            return list.get(list.size()-1);
-        }
+        final AtomicReferenceArray<LogReplicaState> chunk = chunks.get(chunkIndex(index));
+        if (chunk == null) return LogReplicaState.EMPTY;
+        final LogReplicaState state = chunk.get((int)index & CHUNK_MASK);
+        return state == null ? LogReplicaState.EMPTY : state;
     }
 
     @Override
     public boolean compareAndSet(long id, LogReplicaState update, LogReplicaState expect) throws Exception {
         doNemesis();
-        final List<LogReplicaState> list;
-        synchronized (data) {
-            if (id >= data.size()) {
-                return false;
-            }
-            list = data.get((int) id);
-            if (list == null) {
+        final AtomicReferenceArray<LogReplicaState> chunk = chunks.get(chunkIndex(id));
+        if (chunk == null) return false;
+        final int offset = (int)id & CHUNK_MASK;
+        while (true) {
+            final LogReplicaState current = chunk.get(offset);
+            if (current == null || current.getAccepted() != expect.getAccepted() || current.getProposal() != expect.getProposal()) {
                 return false;
             }
-        }
-        synchronized (list) {
-            LogReplicaState current = list.get(list.size()-1);
-            if (current.getAccepted() == expect.getAccepted() && current.getProposal() == expect.getProposal()) {
-                list.add(update);
+            // states are compared by proposal and accepted, not identity, so retry if the instance changed underneath us
+            if (chunk.compareAndSet(offset, current, update)) {
                 return true;
             }
-            return false;
         }
     }
 
     @Override
     public boolean putIfAbsent(long id, LogReplicaState update) throws Exception {
         doNemesis();
-        synchronized (data) {
-            List<LogReplicaState> list = new ArrayList<>();
-            list.add(update);
-            if (id < data.size()) {
-                if (data.get((int) id) == null) {
-                    data.set((int) id, list);
-                    return true;
-                }
-                return false;
-            }
-            while (id > data.size()) {
-                data.add(null);
-            }
-            if (id == data.size()) {
-                data.add(list);
-                return true;
-            } else {
-                final Exception e = new Exception("ruh roh");
-                e.printStackTrace(System.err);
-                throw e;
-            }
+        final AtomicReferenceArray<LogReplicaState> chunk = getOrCreateChunk(chunkIndex(id));
+        if (!chunk.compareAndSet((int)id & CHUNK_MASK, null, update)) {
+            return false;
         }
+        lastIndex.accumulateAndGet(id, Math::max);
+        return true;
     }
 
     @Override
     public long readLastIndex() throws Exception {
         doNemesis();
-        synchronized (data) {
-            return data.size()-1;
-        }
+        return lastIndex.get();
     }
 }
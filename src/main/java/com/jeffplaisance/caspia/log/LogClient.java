@@ -21,19 +21,38 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Ints;
 import com.jeffplaisance.caspia.common.Base;
+import com.jeffplaisance.caspia.common.Broadcaster;
+import com.jeffplaisance.caspia.common.ConflictException;
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.ConsensusMetrics.Phase;
 import com.jeffplaisance.caspia.common.Quorum;
+import com.jeffplaisance.caspia.common.QuorumSizes;
 import com.jeffplaisance.caspia.common.ThrowingFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+/**
+ * a client of one replicated log. writes must not run concurrently with each other, they share the fast path state.
+ * reads ({@link #read(long)}, {@link #readBuffer(long)}, {@link #readLastIndex()} and {@link #readFrom}) only use
+ * state which is fixed at construction, so they may run concurrently with each other and with a write as long as the
+ * broadcaster, the metrics and the replica clients are thread safe, which {@link Quorum#broadcaster()},
+ * the {@link ConsensusMetrics} implementations and the JDBC and local replica clients are.
+ */
 @NotThreadSafe
 public final class LogClient {
 
@@ -49,14 +68,70 @@ public final class LogClient {
 
     private final List<LogReplicaClient> replicas;
     private final int n;
-    private final int f;
-
+    // replicas which must respond to a read or propose. accepts are compare and sets against the state a replica returned
+    // to the propose, so a proposer also needs at least a phase 2 quorum here.
+    private final int phase1;
+    // replicas which must accept a value. always more than the number of witnesses so that a full replica holds every
+    // chosen value.
+    private final int phase2;
+    private final boolean hasWitnesses;
+    private final ConsensusMetrics metrics;
+    private final Broadcaster broadcaster;
+
+    // the only mutable state. only used by write, the read path must never touch it.
     private long fastPathIndex = -1;
 
     public LogClient(List<? extends LogReplicaClient> replicas) {
+        this(replicas, ConsensusMetrics.NOOP);
+    }
+
+    /**
+     * @param replicas the replicas
+     * @param metrics receives phase latencies, fast path hits and conflicts for this log and the latency of every call
+     * this client makes to a replica. replicas are named by their position in replicas.
+     */
+    public LogClient(List<? extends LogReplicaClient> replicas, ConsensusMetrics metrics) {
+        this(replicas, metrics, Quorum.broadcaster());
+    }
+
+    /**
+     * @param replicas the replicas
+     * @param metrics see {@link #LogClient(List, ConsensusMetrics)}
+     * @param broadcaster sends requests to the replicas
+     */
+    public LogClient(List<? extends LogReplicaClient> replicas, ConsensusMetrics metrics, Broadcaster broadcaster) {
+        this(replicas, metrics, broadcaster, QuorumSizes.MAJORITY);
+    }
+
+    /**
+     * @param replicas the replicas
+     * @param metrics see {@link #LogClient(List, ConsensusMetrics)}
+     * @param broadcaster sends requests to the replicas
+     * @param quorumSizes the number of replicas needed in each phase, must be the same for every client of the log. a
+     * writer on the fast path only waits for a phase 2 quorum. phase 2 quorums are enlarged if needed so that they
+     * always include a replica which is not a {@link LogReplicaClient#isWitness() witness}.
+     */
+    public LogClient(List<? extends LogReplicaClient> replicas, ConsensusMetrics metrics, Broadcaster broadcaster, QuorumSizes quorumSizes) {
         n = replicas.size();
-        f = Base.lessThanHalf(n);
-        this.replicas = new ArrayList<>(replicas);
+        final int witnesses = (int) replicas.stream().filter(LogReplicaClient::isWitness).count();
+        Preconditions.checkArgument(witnesses < n, "at least one replica must store values");
+        hasWitnesses = witnesses > 0;
+        phase2 = Math.max(quorumSizes.phase2(n), witnesses + 1);
+        phase1 = Math.max(quorumSizes.phase1(n), phase2);
+        this.metrics = metrics;
+        this.broadcaster = broadcaster;
+        final List<LogReplicaClient> instrumented = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            instrumented.add(new InstrumentedLogReplicaClient(replicas.get(i), String.valueOf(i), metrics));
+        }
+        this.replicas = Collections.unmodifiableList(instrumented);
+    }
+
+    /**
+     * @return true if this client committed the last value it wrote and can write the next index in one round trip
+     */
+    public boolean hasFastPath() {
+        return fastPathIndex != -1;
     }
 
     /**
@@ -65,17 +140,37 @@ public final class LogClient {
      * @return a return value of true means that value was committed at index. a return value of false means that a
      * value was already committed at index. it is possible for the committed value to be binary equivalent to value and
      * for this method to still return false if the same value had been proposed and accepted in an earlier round.
-     * @throws Exception if less than a quorum of responses is obtained (can be triggered by a conflicting client).
-     * this method does not retry on failures or conflicts. retry logic should be handled by the caller.
+     * @throws Exception if less than a quorum of responses is obtained (can be triggered by a conflicting client, in
+     * which case a {@link ConflictException} is thrown). this method does not retry on failures or conflicts. retry
+     * logic should be handled by the caller.
      */
     public boolean write(long index, byte[] value) throws Exception {
+        Preconditions.checkNotNull(value);
+        return write(index, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * same as {@link #write(long, byte[])} without copying value. value is shared by the requests to every replica and
+     * is not copied on the way to them, so large values and direct buffers reach the replica clients as is.
+     * @param index the index
+     * @param value the bytes between the position and the limit of value. must not be modified until this method
+     * returns, and if a replica client retains values, such as {@link LocalLogReplicaClient}, ever. the position and
+     * limit of value are not modified.
+     * @return see {@link #write(long, byte[])}
+     * @throws Exception see {@link #write(long, byte[])}
+     */
+    public boolean write(long index, ByteBuffer value) throws Exception {
         // null is used as a sentinel value to signify that no value has been written at this index yet.
         // it is valid for there to be a null accepted value which will transition to a non-null value later.
         // accepted non-null values can never be changed.
         Preconditions.checkNotNull(value);
         Preconditions.checkArgument(index > 0);
 
-        if (tryFastPathWrite(index, value)) return true;
+        if (tryFastPathWrite(index, value)) {
+            metrics.fastPath(true);
+            return true;
+        }
+        metrics.fastPath(false);
 
         final List<LogReplicaState> initialValues = readInitialValues(index);
         // reference equality check is intentional
@@ -87,7 +182,7 @@ public final class LogClient {
         return false;
     }
 
-    private boolean tryFastPathWrite(long index, byte[] value) throws Exception {
+    private boolean tryFastPathWrite(long index, ByteBuffer value) throws Exception {
         if (fastPathEnabled) {
             // fast path is an optimization to allow one round trip writes
             // this is true iff this client was the one to commit a non-null value at index-1
@@ -95,16 +190,17 @@ public final class LogClient {
             // any competing proposer will start at proposal number 2 and block fast path
             try {
                 if (index == fastPathIndex) {
-                    final List<Boolean> responses = Quorum.broadcast(
+                    final List<Boolean> responses = metrics.time(Phase.ACCEPT, () -> broadcaster.broadcast(
                             replicas,
-                            n - f,
+                            phase2,
                             createReplicaDoAccept(
                                     index,
                                     new LogReplicaState(1, 1, value),
                                     LogReplicaState.EMPTY,
                                     true),
-                            false);
-                    if (Base.sum(responses) >= n - f) {
+                            false,
+                            Boolean.TRUE::equals));
+                    if (Base.sum(responses) >= phase2) {
                         fastPathIndex = index + 1;
                         return true;
                     } else {
@@ -121,7 +217,73 @@ public final class LogClient {
     }
 
     private List<LogReplicaState> readInitialValues(long index) throws Exception {
-        return Quorum.broadcast(replicas, n - f, replica -> replica.read(index), LogReplicaState.EMPTY);
+        return metrics.time(Phase.READ, () -> broadcaster.broadcast(replicas, phase1, replica -> replica.readMetadata(index), LogReplicaState.EMPTY));
+    }
+
+    /**
+     * the value accepted in a given round is the same on every replica which accepted it, so quorum reads only fetch
+     * metadata and the value is read from a single replica which accepted the round.
+     * @param index the index
+     * @param accepted the accepted proposal whose value is needed
+     * @param states the states read from the replicas, EMPTY for replicas without a response
+     * @return the full state of a replica whose accepted proposal is accepted, or with witnesses see
+     * {@link #readLatestValue(long, int)}
+     * @throws Exception if no such replica could be read, a {@link ConflictException} if their accepted proposal had
+     * changed
+     */
+    private @Nullable LogReplicaState readValue(long index, int accepted, List<LogReplicaState> states) throws Exception {
+        for (LogReplicaState state : states) {
+            if (state.getAccepted() == accepted && state.hasValue() && !state.isMetadataOnly()) return state;
+        }
+        Exception firstError = null;
+        for (int i = 0; i < n; i++) {
+            final LogReplicaState state = states.get(i);
+            if (state.getAccepted() != accepted || !state.hasValue() || replicas.get(i).isWitness()) continue;
+            final List<Optional<ThrowingFunction<LogReplicaClient, LogReplicaState, Exception>>> functions = new ArrayList<>(Collections.nCopies(n, Optional.empty()));
+            functions.set(i, Optional.of(replica -> replica.read(index)));
+            try {
+                final LogReplicaState full = metrics.time(Phase.READ, () -> broadcaster.broadcast2(replicas, 1, functions, LogReplicaState.EMPTY)).get(i);
+                if (full.getAccepted() == accepted) return full;
+            } catch (Exception e) {
+                if (firstError == null) firstError = e;
+            }
+        }
+        if (hasWitnesses) return readLatestValue(index, accepted);
+        if (firstError != null) throw new Exception("could not read the value at index "+index, firstError);
+        throw conflict(index);
+    }
+
+    /**
+     * the replicas which reported a round may all be witnesses, either because the full replicas which accepted it
+     * didn't respond or because the round never reached a full replica. a full replica which accepted a round since
+     * moved to a later round which holds the same value if the round was chosen, so the full replica with the highest
+     * accepted proposal of at least accepted has a value which is safe to propose. if every full replica has an accepted
+     * proposal below accepted, the round never reached a full replica, so it wasn't chosen, and any value chosen earlier
+     * is held by the full replica with the highest accepted proposal.
+     * @param index the index
+     * @param accepted the highest accepted proposal read from a quorum
+     * @return the full state of the full replica with the highest accepted proposal, or null if no full replica holds a
+     * value
+     * @throws Exception if no full replica has reached accepted and some full replicas didn't respond
+     */
+    private @Nullable LogReplicaState readLatestValue(long index, int accepted) throws Exception {
+        final List<Optional<ThrowingFunction<LogReplicaClient, LogReplicaState, Exception>>> functions = new ArrayList<>(n);
+        int fullReplicas = 0;
+        for (LogReplicaClient replica : replicas) {
+            if (replica.isWitness()) {
+                functions.add(Optional.empty());
+            } else {
+                functions.add(Optional.of(full -> full.read(index)));
+                fullReplicas++;
+            }
+        }
+        final List<LogReplicaState> states = metrics.time(Phase.READ, () -> broadcaster.broadcast2(replicas, 1, functions, null, state -> state.getAccepted() >= accepted));
+        final List<LogReplicaState> responses = states.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        final LogReplicaState latest = responses.stream().max(MAX_ACCEPTED).orElse(LogReplicaState.EMPTY);
+        if (latest.getAccepted() < accepted && responses.size() < fullReplicas) {
+            throw new Exception("could not read the value at index "+index+", "+responses.size()+" of "+fullReplicas+" full replicas responded");
+        }
+        return latest.hasValue() ? latest : null;
     }
 
     /**
@@ -135,7 +297,7 @@ public final class LogClient {
      * input value was the value written.
      * @throws Exception if successful on less than a quorum or replicas
      */
-    private @Nullable byte[] write2(final long index, final @Nullable byte[] value, final List<LogReplicaState> initialValues) throws Exception {
+    private @Nullable ByteBuffer write2(final long index, final @Nullable ByteBuffer value, final List<LogReplicaState> initialValues) throws Exception {
 
         // lowest possible value for newProposal is 2 since 1 is reserved for fast path
         final int newProposal = initialValues.stream().map(LogReplicaState::getProposal).reduce(1, Math::max)+1;
@@ -155,20 +317,25 @@ public final class LogClient {
         final List<ThrowingFunction<LogReplicaClient, Optional<LogReplicaState>, Exception>> proposeFunctions = initialValues.stream()
                 .map(state -> createReplicaDoPropose(index, newProposal, state))
                 .collect(Collectors.toList());
-        final List<Optional<LogReplicaState>> proposeResponses = Quorum.broadcast(replicas, n-f, proposeFunctions, Optional.empty());
+        return metrics.time(Phase.PROPOSE, () -> {
+            final List<Optional<LogReplicaState>> proposeResponses = broadcaster.broadcast(replicas, phase1, proposeFunctions, Optional.empty(), Optional::isPresent);
 
-        // check for success on a quorum of replicas, throw exception on failure
-        if (proposeResponses.stream().filter(Optional::isPresent).count() < n-f) {
-            throw new Exception();
-        }
-        return proposeResponses;
+            // check for success on a quorum of replicas, throw exception on failure
+            if (proposeResponses.stream().filter(Optional::isPresent).count() < phase1) {
+                throw conflict(index);
+            }
+            return proposeResponses;
+        });
     }
 
     private ThrowingFunction<LogReplicaClient, Optional<LogReplicaState>, Exception> createReplicaDoPropose(long index, int newProposal, LogReplicaState state) {
         return replica -> {
-            final LogReplicaState nextState = new LogReplicaState(newProposal, state.getAccepted(), state.getValue());
-            if (replica.writeAtomic(index, nextState, state.getProposal() == 0, state)) {
-                return Optional.of(nextState);
+            // only the proposal changes, so the value is not rewritten
+            final boolean applied = state.getProposal() == 0
+                    ? replica.putIfAbsent(index, new LogReplicaState(newProposal, 0, (byte[]) null))
+                    : replica.compareAndSetProposal(index, newProposal, state);
+            if (applied) {
+                return Optional.of(state.withBallot(newProposal, state.getAccepted()));
             }
             return Optional.empty();
         };
@@ -183,7 +350,7 @@ public final class LogClient {
      * value was the value written.
      * @throws Exception if successful on less than a quorum or replicas
      */
-    private @Nullable byte[] doAccept(long index, @Nullable byte[] value, int newProposal, List<Optional<LogReplicaState>> proposeResponses) throws Exception {
+    private @Nullable ByteBuffer doAccept(long index, @Nullable ByteBuffer value, int newProposal, List<Optional<LogReplicaState>> proposeResponses) throws Exception {
         // find the response with the highest accepted number from the replicas where propose succeeded
         final LogReplicaState maxInitial = proposeResponses.stream()
                 .flatMap(Base::toStream)
@@ -192,22 +359,39 @@ public final class LogClient {
 
         // if a value has already been written at this index we need to make sure it is propagated
         // if no value has been written we can write our own value
-        final byte[] valueWritten = maxInitial.getValue() == null ? value : maxInitial.getValue();
-
-        final LogReplicaState nextState = new LogReplicaState(newProposal, newProposal, valueWritten);
+        final LogReplicaState nextState;
+        final ByteBuffer valueWritten;
+        final LogReplicaState maxState = maxInitial.hasValue()
+                ? readValue(index, maxInitial.getAccepted(), proposeResponses.stream().map(state -> state.orElse(LogReplicaState.EMPTY)).collect(Collectors.toList()))
+                : null;
+        if (maxState != null) {
+            nextState = maxState.withBallot(newProposal, newProposal);
+            valueWritten = maxState.getValueBuffer();
+        } else {
+            nextState = new LogReplicaState(newProposal, newProposal, value);
+            valueWritten = value;
+        }
         // attempt to update accepted to newProposal and value to valueWritten on replicas where propose succeeded
         final List<Optional<ThrowingFunction<LogReplicaClient, Boolean, Exception>>> acceptFunctions = proposeResponses.stream()
                 .map(optional -> optional.map(state -> createReplicaDoAccept(index, nextState, state, false)))
                 .collect(Collectors.toList());
-        List<Boolean> acceptResponses = Quorum.broadcast2(replicas, n-f, acceptFunctions, Boolean.FALSE);
+        metrics.time(Phase.ACCEPT, () -> {
+            final List<Boolean> acceptResponses = broadcaster.broadcast2(replicas, phase2, acceptFunctions, Boolean.FALSE, Boolean.TRUE::equals);
 
-        // check for success on a quorum of replicas, return valueWritten on success and throw exception on failure
-        if (Base.sum(acceptResponses) < n-f) {
-            throw new Exception();
-        }
+            // check for success on a quorum of replicas, return valueWritten on success and throw exception on failure
+            if (Base.sum(acceptResponses) < phase2) {
+                throw conflict(index);
+            }
+            return acceptResponses;
+        });
         return valueWritten;
     }
 
+    private ConflictException conflict(long index) {
+        metrics.conflict();
+        return new ConflictException("index "+index+" was modified by another client");
+    }
+
     private ThrowingFunction<LogReplicaClient, Boolean, Exception> createReplicaDoAccept(long index, LogReplicaState nextState, LogReplicaState state, boolean expectAbsent) {
         return replica -> replica.writeAtomic(index, nextState, expectAbsent, state);
     }
@@ -216,11 +400,28 @@ public final class LogClient {
      * @param index the index
      * @return the value written at the index or null if no value has been written at the index. a return value of null
      * implies that the values at all indices greater than index are also null.
-     * @throws Exception if less than a quorum of responses is obtained (can be triggered by a conflicting client).
-     * this method does not retry on failures or conflicts. retry logic should be handled by the caller.
+     * @throws Exception if less than a quorum of responses is obtained (can be triggered by a conflicting client, in
+     * which case a {@link ConflictException} is thrown). this method does not retry on failures or conflicts. retry
+     * logic should be handled by the caller.
      */
     @Nullable
     public byte[] read(long index) throws Exception {
+        final LogReplicaState state = readState(index);
+        return state.getValue();
+    }
+
+    /**
+     * same as {@link #read(long)} without copying the value
+     * @param index the index
+     * @return a read only view of the value written at the index, or null if no value has been written at the index
+     * @throws Exception see {@link #read(long)}
+     */
+    public @Nullable ByteBuffer readBuffer(long index) throws Exception {
+        final LogReplicaState state = readState(index);
+        return state.getValueBuffer();
+    }
+
+    private LogReplicaState readState(long index) throws Exception {
         Preconditions.checkArgument(index > 0);
 
         final List<LogReplicaState> responses = readInitialValues(index);
@@ -229,13 +430,13 @@ public final class LogClient {
             // this is an optimization to allow one round trip reads at indexes which have a non-null committed value.
             // this block is not required for correctness.
             final LogReplicaState maxAccepted = responses.stream().max(MAX_ACCEPTED).orElse(LogReplicaState.EMPTY);
-            final byte[] maxValue = maxAccepted.getValue();
-            if (maxValue != null) {
+            if (maxAccepted.hasValue()) {
                 final long maxAcceptedCount = responses.stream().filter(r -> r.getAccepted() == maxAccepted.getAccepted()).count();
-                if (maxAcceptedCount >= n - f) {
-                    // if there is a non-null value committed in the same round at a quorum of replicas it cannot change
+                if (maxAcceptedCount >= phase2) {
+                    // if there is a non-null value committed in the same round at a phase 2 quorum of replicas it cannot change
                     // and we can return it safely.
-                    return maxValue;
+                    final LogReplicaState chosen = readValue(index, maxAccepted.getAccepted(), responses);
+                    if (chosen != null) return chosen;
                 }
             }
         }
@@ -248,7 +449,7 @@ public final class LogClient {
         // potential for partially committed values to become fully committed as a result of future read operations.
         // if there is a partially committed value this will either force it to become fully committed or overwrite it
         // with a null value.
-        return write2(index, null, responses);
+        return new LogReplicaState(0, 0, write2(index, null, responses));
     }
 
     /**
@@ -260,10 +461,86 @@ public final class LogClient {
      * conflicts. retry logic should be handled by the caller.
      */
     public long readLastIndex() throws Exception {
-        final List<Long> maxValues = Quorum.broadcast(replicas, n-f, LogReplicaClient::readLastIndex, 0L);
+        final List<Long> maxValues = metrics.time(Phase.READ, () -> broadcaster.broadcast(replicas, phase1, LogReplicaClient::readLastIndex, 0L));
         return maxValues.stream().reduce(0L, Math::max);
     }
 
+    /**
+     * reads the entries from index from onward, for a client taking over the log from a previous writer. reading the
+     * previous writer's backlog with {@link #read(long)} takes at least one round trip per index in sequence. instead
+     * this reads {@link #readLastIndex()} and resolves every index up to it with up to parallelism reads in flight,
+     * each of which commits a partially accepted entry or replaces it with null exactly like read does. indexes after
+     * the last index are then read one at a time until one has no value.
+     * <p>
+     * read commits a null at an index which has no value, and nothing follows a committed null, so resolving
+     * later indexes before earlier ones can't expose an entry that a sequential reader would not have seen.
+     * <p>
+     * the reads run on executor while the calling thread waits, see the class documentation for when reads may run
+     * concurrently. with a broadcaster which is not thread safe, such as a simulated network, pass a direct executor.
+     * @param from the first index to read
+     * @param limit the maximum number of entries to return
+     * @param parallelism the maximum number of indexes being resolved at once
+     * @param executor runs the reads
+     * @return the values of the consecutive entries starting at from. fewer than limit entries means the end of the
+     * log was reached and the next entry is written at from plus the number of entries returned.
+     * @throws Exception if an index could not be resolved, see {@link #read(long)}. indexes resolved before the failure
+     * stay resolved, so this may simply be called again. reads still in flight, on executor, are cancelled, as they are
+     * if the calling thread is interrupted.
+     */
+    public List<byte[]> readFrom(long from, int limit, int parallelism, ExecutorService executor) throws Exception {
+        Preconditions.checkArgument(from > 0);
+        Preconditions.checkArgument(limit > 0);
+        Preconditions.checkArgument(parallelism > 0);
+        final List<byte[]> ret = new ArrayList<>();
+        final long last = Math.min(readLastIndex(), from + limit - 1);
+        if (last >= from) {
+            for (byte[] value : readParallel(from, Ints.checkedCast(last - from + 1), parallelism, executor)) {
+                if (value == null) return ret;
+                ret.add(value);
+            }
+        }
+        while (ret.size() < limit) {
+            final byte[] value = read(from + ret.size());
+            if (value == null) break;
+            ret.add(value);
+        }
+        return ret;
+    }
+
+    private byte[][] readParallel(long from, int count, int parallelism, ExecutorService executor) throws Exception {
+        final byte[][] values = new byte[count][];
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        final List<Future<Void>> futures = new ArrayList<>();
+        try {
+            int submitted = 0;
+            for (int completed = 0; completed < count; completed++) {
+                while (submitted < count && submitted - completed < parallelism) {
+                    final int offset = submitted++;
+                    futures.add(completionService.submit(() -> {
+                        values[offset] = read(from + offset);
+                        return null;
+                    }));
+                }
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+                    throw Throwables.propagate(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+            return values;
+        } finally {
+            // after a failure or an interrupt the reads still in flight would only hold the caller's executor, their
+            // results are never used
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
     /**
      * helper that calls read and parses the result as a UTF-8 string
      * @param index the index
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jeffplaisance.caspia.log;
 
+import java.util.List;
+
 public interface LogReplicaClient {
 
     LogReplicaState read(long index) throws Exception;
@@ -48,5 +50,51 @@ public interface LogReplicaClient {
         return writeAtomic(id, update, true, LogReplicaState.EMPTY);
     }
 
+    /**
+     * reads the state at index without transferring its value. quorum reads only need the value from one of the
+     * replicas, so replicas which store large values should override this.
+     * @param index the index
+     * @return the state at index, may be {@link LogReplicaState#isMetadataOnly() metadata only}
+     */
+    default LogReplicaState readMetadata(long index) throws Exception {
+        return read(index);
+    }
+
+    /**
+     * sets the proposal of the state at id, leaving its accepted proposal and value unchanged, if its proposal and
+     * accepted proposal match expect. this is the propose phase, which never needs to rewrite the value. replicas which
+     * override {@link #readMetadata(long)} must override this, since expect may not hold the value.
+     * @param id the index
+     * @param proposal the new proposal
+     * @param expect the expected current state
+     * @return true if the proposal was updated
+     */
+    default boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        return compareAndSet(id, expect.withBallot(proposal, expect.getAccepted()), expect);
+    }
+
+    /**
+     * applies each write as if by its own call. replicas which can send several writes in one round trip should
+     * override this, see {@link CoalescingLogReplicaClient}.
+     * @param writes the writes
+     * @return whether each write was applied, in the order of writes
+     * @throws Exception if the batch failed, in which case any of the writes may or may not have been applied
+     */
+    default boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        final boolean[] ret = new boolean[writes.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = writes.get(i).apply(this);
+        }
+        return ret;
+    }
+
     long readLastIndex() throws Exception;
+
+    /**
+     * @return true if this replica only stores a digest of each value, see {@link WitnessLogReplicaClient}. decorators
+     * must forward this.
+     */
+    default boolean isWitness() {
+        return false;
+    }
 }
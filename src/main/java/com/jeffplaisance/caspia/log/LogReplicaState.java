@@ -16,18 +16,82 @@ limitations under the License.
 
 package com.jeffplaisance.caspia.log;
 
+import com.jeffplaisance.caspia.common.Base;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * the state of one index on one replica. the value is held as a read only {@link ByteBuffer} which is shared, not
+ * copied, by every state derived from it, so a value is never duplicated on its way from {@link LogClient} to the
+ * replicas. a value must not be modified after it has been passed to a state.
+ * <p>
+ * states returned by {@link LogReplicaClient#readMetadata(long)} only record whether there is a value, see
+ * {@link #isMetadataOnly()}.
+ */
 public final class LogReplicaState {
 
-    public static final LogReplicaState EMPTY = new LogReplicaState(0, 0, null);
+    public static final LogReplicaState EMPTY = new LogReplicaState(0, 0, (byte[]) null);
 
     private final int proposal;
     private final int accepted;
-    private final byte[] value;
+    // the backing array if it holds exactly the value, for callers in this package which bind it without copying
+    private final @Nullable byte[] array;
+    private final @Nullable ByteBuffer buffer;
+    private final boolean metadataOnly;
+    private final boolean hasValue;
+
+    public LogReplicaState(int proposal, int accepted, @Nullable byte[] value) {
+        this(proposal, accepted, value, value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer());
+    }
+
+    /**
+     * @param proposal the proposal
+     * @param accepted the accepted proposal
+     * @param value the bytes between the position and the limit of value, which may be a direct buffer. the position
+     * and limit of value are not modified.
+     */
+    public LogReplicaState(int proposal, int accepted, @Nullable ByteBuffer value) {
+        this(proposal, accepted, value == null ? null : exactArray(value), value == null ? null : value.slice().asReadOnlyBuffer());
+    }
 
-    public LogReplicaState(int proposal, int accepted, byte[] value) {
+    private LogReplicaState(int proposal, int accepted, @Nullable byte[] array, @Nullable ByteBuffer buffer) {
+        this(proposal, accepted, array, buffer, false, buffer != null);
+    }
+
+    private LogReplicaState(int proposal, int accepted, @Nullable byte[] array, @Nullable ByteBuffer buffer, boolean metadataOnly, boolean hasValue) {
         this.proposal = proposal;
         this.accepted = accepted;
-        this.value = value;
+        this.array = array;
+        this.buffer = buffer;
+        this.metadataOnly = metadataOnly;
+        this.hasValue = hasValue;
+    }
+
+    /**
+     * @param proposal the proposal
+     * @param accepted the accepted proposal
+     * @param hasValue whether the replica holds a non-null value
+     * @return a state without its value, for {@link LogReplicaClient#readMetadata(long)}
+     */
+    public static LogReplicaState metadata(int proposal, int accepted, boolean hasValue) {
+        return new LogReplicaState(proposal, accepted, null, null, true, hasValue);
+    }
+
+    private static @Nullable byte[] exactArray(ByteBuffer value) {
+        if (value.hasArray() && value.arrayOffset() == 0 && value.position() == 0 && value.remaining() == value.array().length) {
+            return value.array();
+        }
+        return null;
+    }
+
+    /**
+     * @param proposal the proposal of the new state
+     * @param accepted the accepted proposal of the new state
+     * @return a state with the same value as this one
+     */
+    public LogReplicaState withBallot(int proposal, int accepted) {
+        return new LogReplicaState(proposal, accepted, array, buffer, metadataOnly, hasValue);
     }
 
     public int getProposal() {
@@ -38,7 +102,65 @@ public final class LogReplicaState {
         return accepted;
     }
 
-    public byte[] getValue() {
-        return value;
+    /**
+     * @return a copy of the value, owned by the caller. use {@link #getValueBuffer()} to avoid the copy.
+     */
+    public @Nullable byte[] getValue() {
+        checkValueRead();
+        if (buffer == null) return null;
+        return array != null ? array.clone() : Base.toByteArray(buffer);
+    }
+
+    /**
+     * @return the backing array of the value without copying it, see {@link #hasArray()}. the array is shared with
+     * every state derived from this one and must never be modified.
+     */
+    @Nullable byte[] getArray() {
+        checkValueRead();
+        return array;
+    }
+
+    /**
+     * @return a read only view of the value with its own position and limit, or null if there is no value
+     */
+    public @Nullable ByteBuffer getValueBuffer() {
+        checkValueRead();
+        return buffer == null ? null : buffer.duplicate();
+    }
+
+    /**
+     * @return true if there is no value or the value is held in an array which replica clients in this package can
+     * pass on without a copy
+     */
+    public boolean hasArray() {
+        checkValueRead();
+        return array != null || buffer == null;
+    }
+
+    /**
+     * @return the length of the value in bytes, 0 if there is no value
+     */
+    public int getValueLength() {
+        checkValueRead();
+        return buffer == null ? 0 : buffer.remaining();
+    }
+
+    /**
+     * @return true if there is a non-null value, including states whose value was not read
+     */
+    public boolean hasValue() {
+        return hasValue;
+    }
+
+    /**
+     * @return true if this state was read without its value. the value methods of such a state throw
+     * IllegalStateException.
+     */
+    public boolean isMetadataOnly() {
+        return metadataOnly;
+    }
+
+    private void checkValueRead() {
+        if (metadataOnly) throw new IllegalStateException("the value of a metadata only state was not read");
     }
 }
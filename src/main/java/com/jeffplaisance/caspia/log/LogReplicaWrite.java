@@ -0,0 +1,95 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * one of the conditional writes of {@link LogReplicaClient}, for {@link LogReplicaClient#writeBatch(java.util.List)}
+ */
+@Immutable
+public final class LogReplicaWrite {
+
+    private final long id;
+    private final @Nullable LogReplicaState update;
+    private final @Nullable LogReplicaState expect;
+    private final int proposal;
+
+    private LogReplicaWrite(long id, @Nullable LogReplicaState update, @Nullable LogReplicaState expect, int proposal) {
+        this.id = id;
+        this.update = update;
+        this.expect = expect;
+        this.proposal = proposal;
+    }
+
+    /**
+     * see {@link LogReplicaClient#compareAndSetProposal(long, int, LogReplicaState)}
+     */
+    public static LogReplicaWrite compareAndSetProposal(long id, int proposal, LogReplicaState expect) {
+        return new LogReplicaWrite(id, null, expect, proposal);
+    }
+
+    /**
+     * see {@link LogReplicaClient#writeAtomic(long, LogReplicaState, boolean, LogReplicaState)}
+     */
+    public static LogReplicaWrite writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) {
+        return new LogReplicaWrite(id, update, expect_absent ? null : expect, update.getProposal());
+    }
+
+    /**
+     * @param update the new state
+     * @return this write with update in place of its new state, for decorators which transform values
+     */
+    public LogReplicaWrite withUpdate(LogReplicaState update) {
+        return new LogReplicaWrite(id, update, expect, update.getProposal());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the new state, null if this write only sets the proposal
+     */
+    public @Nullable LogReplicaState getUpdate() {
+        return update;
+    }
+
+    /**
+     * @return the expected current state, null if this write expects the index to be absent
+     */
+    public @Nullable LogReplicaState getExpect() {
+        return expect;
+    }
+
+    /**
+     * @return the proposal of the state after this write
+     */
+    public int getProposal() {
+        return proposal;
+    }
+
+    /**
+     * @param replica the replica
+     * @return true if this write was applied to replica
+     */
+    public boolean apply(LogReplicaClient replica) throws Exception {
+        if (update == null) return replica.compareAndSetProposal(id, proposal, expect);
+        return replica.writeAtomic(id, update, expect == null, expect == null ? LogReplicaState.EMPTY : expect);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.google.common.primitives.Longs;
+import com.jeffplaisance.caspia.common.Transcoder;
+import com.jeffplaisance.caspia.register.RegisterClient;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * keeps the latest snapshot in a register, encoded as the 8 byte index followed by the state. since the whole snapshot
+ * is a single register value this is only suitable for small states.
+ */
+public final class RegisterSnapshotStore<S> implements SnapshotStore<S> {
+
+    private final RegisterClient<byte[]> register;
+    private final Transcoder<S> transcoder;
+
+    /**
+     * @param register the register holding the snapshot. must be used with a transcoder which leaves the bytes as is.
+     * @param transcoder the transcoder for the state
+     */
+    public RegisterSnapshotStore(RegisterClient<byte[]> register, Transcoder<S> transcoder) {
+        this.register = register;
+        this.transcoder = transcoder;
+    }
+
+    @Override
+    public @Nullable Snapshot<S> load() throws Exception {
+        return decode(register.read());
+    }
+
+    @Override
+    public void save(Snapshot<S> snapshot) throws Exception {
+        final byte[] state = transcoder.toBytes(snapshot.getState());
+        final byte[] encoded = new byte[8 + state.length];
+        System.arraycopy(Longs.toByteArray(snapshot.getIndex()), 0, encoded, 0, 8);
+        System.arraycopy(state, 0, encoded, 8, state.length);
+        // never replace a newer snapshot written by another instance
+        register.write(current -> current == null || Longs.fromByteArray(current) < snapshot.getIndex() ? encoded : current);
+    }
+
+    private @Nullable Snapshot<S> decode(@Nullable byte[] bytes) {
+        if (bytes == null) return null;
+        return new Snapshot<>(Longs.fromByteArray(bytes), transcoder.fromBytes(Arrays.copyOfRange(bytes, 8, bytes.length)));
+    }
+}
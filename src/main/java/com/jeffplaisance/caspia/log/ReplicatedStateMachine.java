@@ -0,0 +1,164 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+
+/**
+ * materializes the state resulting from applying the entries of a log in order. entries are applied incrementally as
+ * the log is read and the state is periodically saved to a {@link SnapshotStore} so that a restarted instance only has
+ * to replay the entries written since the last snapshot.
+ * <p>
+ * an instance is also the only correct way for a process to write to the log, see {@link #propose(byte[])}. any
+ * number of instances on different processes may share a log, each one materializes its own copy of the state.
+ */
+@NotThreadSafe
+public final class ReplicatedStateMachine<S> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicatedStateMachine.class);
+    // entries read per call to LogClient.readFrom, bounds the entries held in memory before they are applied
+    private static final int CATCH_UP_BATCH_SIZE = 4096;
+
+    private final LogClient log;
+    private final BiFunction<S, byte[], S> transition;
+    private final S initialState;
+    private final SnapshotStore<S> snapshots;
+    private final long snapshotInterval;
+    private final int catchUpParallelism;
+    private final ExecutorService catchUpExecutor;
+
+    private S state;
+    private long appliedIndex = 0;
+    private long snapshotIndex = 0;
+
+    /**
+     * @param log the log
+     * @param transition returns the state after applying an entry to a state. must be deterministic and must not
+     * modify its arguments.
+     * @param initialState the state before the first entry
+     * @param snapshots where snapshots are saved and loaded from
+     * @param snapshotInterval a snapshot is saved each time this many entries have been applied since the last one
+     */
+    public ReplicatedStateMachine(LogClient log, BiFunction<S, byte[], S> transition, S initialState, SnapshotStore<S> snapshots, long snapshotInterval) {
+        this(log, transition, initialState, snapshots, snapshotInterval, 1, MoreExecutors.newDirectExecutorService());
+    }
+
+    /**
+     * @param catchUpParallelism the maximum number of log indexes read at once while catching up
+     * @param catchUpExecutor runs the reads while catching up, see {@link LogClient#readFrom(long, int, int, ExecutorService)}.
+     * not shut down by this instance. see
+     * {@link #ReplicatedStateMachine(LogClient, BiFunction, Object, SnapshotStore, long)} for the other parameters.
+     */
+    public ReplicatedStateMachine(LogClient log, BiFunction<S, byte[], S> transition, S initialState, SnapshotStore<S> snapshots, long snapshotInterval, int catchUpParallelism, ExecutorService catchUpExecutor) {
+        Preconditions.checkArgument(snapshotInterval > 0);
+        Preconditions.checkArgument(catchUpParallelism > 0);
+        this.log = log;
+        this.transition = transition;
+        this.initialState = initialState;
+        this.snapshots = snapshots;
+        this.snapshotInterval = snapshotInterval;
+        this.catchUpParallelism = catchUpParallelism;
+        this.catchUpExecutor = catchUpExecutor;
+        this.state = initialState;
+    }
+
+    /**
+     * restarts from the latest snapshot, or from the initial state if there is none, and replays the rest of the log
+     * @throws Exception if loading the snapshot or reading the log fails. may be called again to retry.
+     */
+    public void recover() throws Exception {
+        final Snapshot<S> snapshot = snapshots.load();
+        if (snapshot != null) {
+            state = snapshot.getState();
+            appliedIndex = snapshot.getIndex();
+            snapshotIndex = snapshot.getIndex();
+        } else {
+            state = initialState;
+            appliedIndex = 0;
+            snapshotIndex = 0;
+        }
+        catchUp();
+    }
+
+    /**
+     * applies every entry which has been written to the log since the last entry applied by this instance
+     * @return the number of entries applied
+     * @throws Exception if reading the log fails. entries applied before the failure stay applied, so this may simply
+     * be called again.
+     */
+    public long catchUp() throws Exception {
+        long applied = 0;
+        while (true) {
+            final List<byte[]> entries = log.readFrom(appliedIndex + 1, CATCH_UP_BATCH_SIZE, catchUpParallelism, catchUpExecutor);
+            for (byte[] entry : entries) {
+                apply(entry);
+                applied++;
+            }
+            if (entries.size() < CATCH_UP_BATCH_SIZE) return applied;
+        }
+    }
+
+    /**
+     * attempts to append entry to the log and apply it. only writes at the index following the last entry applied by
+     * this instance, which is the index the log requires a correct client to write at.
+     * @return true if entry was appended and applied, false if another entry was written at that index first. in that
+     * case the other entries have been applied and the caller may decide whether to propose entry again.
+     * @throws Exception if the log write fails, in which case it is unknown whether entry was appended. calling
+     * {@link #catchUp()} will apply it if it was.
+     */
+    public boolean propose(byte[] entry) throws Exception {
+        if (log.write(appliedIndex + 1, entry)) {
+            apply(entry);
+            return true;
+        }
+        catchUp();
+        return false;
+    }
+
+    private void apply(byte[] entry) {
+        state = transition.apply(state, entry);
+        appliedIndex++;
+        if (appliedIndex - snapshotIndex >= snapshotInterval) {
+            try {
+                snapshots.save(new Snapshot<>(appliedIndex, state));
+            } catch (Exception e) {
+                // snapshots only shorten recovery, try again after another interval
+                LOG.warn("saving snapshot at index {} failed", appliedIndex, e);
+            }
+            snapshotIndex = appliedIndex;
+        }
+    }
+
+    public S getState() {
+        return state;
+    }
+
+    /**
+     * @return the index of the last entry reflected in the state
+     */
+    public long getAppliedIndex() {
+        return appliedIndex;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+/**
+ * the state of a {@link ReplicatedStateMachine} after applying every log entry up to and including index
+ */
+public final class Snapshot<S> {
+
+    private final long index;
+    private final S state;
+
+    public Snapshot(long index, S state) {
+        this.index = index;
+        this.state = state;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public S getState() {
+        return state;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import javax.annotation.Nullable;
+
+/**
+ * durable storage for the latest snapshot of a {@link ReplicatedStateMachine}. snapshots are an optimization, a store
+ * may lose snapshots as long as it never returns a snapshot of an index which was not reached by applying the log.
+ */
+public interface SnapshotStore<S> {
+
+    /**
+     * @return the snapshot with the highest index saved so far or null if there is none
+     */
+    @Nullable Snapshot<S> load() throws Exception;
+
+    /**
+     * saves snapshot unless a snapshot with a higher index has already been saved
+     */
+    void save(Snapshot<S> snapshot) throws Exception;
+}
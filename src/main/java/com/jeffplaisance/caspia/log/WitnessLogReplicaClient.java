@@ -0,0 +1,93 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a witness replica stores the ballots of every index but only a SHA-256 digest in place of each value. witnesses vote
+ * in every phase like any other replica, so a log with three full replicas and two witnesses tolerates as many
+ * failures as five full replicas while storing and receiving only three copies of each value.
+ * <p>
+ * reads return {@link LogReplicaState#isMetadataOnly() metadata only} states, so a value can never be read from a
+ * witness. {@link LogClient} fetches values from full replicas and makes every accept quorum include at least one full
+ * replica. if every full replica which holds a value is lost the value can't be recovered, even though witnesses still
+ * vote for it.
+ * <p>
+ * the underlying replica stores the digest as the value, so any replica implementation can be used as a witness.
+ */
+public final class WitnessLogReplicaClient implements LogReplicaClient {
+
+    private static final HashFunction DIGEST = Hashing.sha256();
+
+    private final LogReplicaClient delegate;
+
+    public WitnessLogReplicaClient(LogReplicaClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public LogReplicaState read(long index) throws Exception {
+        return readMetadata(index);
+    }
+
+    @Override
+    public LogReplicaState readMetadata(long index) throws Exception {
+        final LogReplicaState state = delegate.readMetadata(index);
+        return LogReplicaState.metadata(state.getProposal(), state.getAccepted(), state.hasValue());
+    }
+
+    @Override
+    public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        return delegate.compareAndSetProposal(id, proposal, expect);
+    }
+
+    @Override
+    public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+        return delegate.writeAtomic(id, digest(update), expect_absent, expect);
+    }
+
+    @Override
+    public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        final List<LogReplicaWrite> digests = new ArrayList<>(writes.size());
+        for (LogReplicaWrite write : writes) {
+            digests.add(write.getUpdate() == null ? write : write.withUpdate(digest(write.getUpdate())));
+        }
+        return delegate.writeBatch(digests);
+    }
+
+    @Override
+    public long readLastIndex() throws Exception {
+        return delegate.readLastIndex();
+    }
+
+    @Override
+    public boolean isWitness() {
+        return true;
+    }
+
+    private static LogReplicaState digest(LogReplicaState state) {
+        if (state.isMetadataOnly() || !state.hasValue()) return state;
+        // the value is only read, so hash the backing array when there is one instead of a copy
+        final byte[] value = state.hasArray() ? state.getArray() : state.getValue();
+        return new LogReplicaState(state.getProposal(), state.getAccepted(), DIGEST.hashBytes(value).asBytes());
+    }
+}
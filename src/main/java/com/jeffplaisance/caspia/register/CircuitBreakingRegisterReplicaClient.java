@@ -0,0 +1,91 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.CircuitBreaker;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * guards a replica with a {@link CircuitBreaker}. wrap each replica once, for example in the replica loader of a
+ * {@link RegisterNamespace}, so that every register on the replica shares its health and in flight limit.
+ */
+public final class CircuitBreakingRegisterReplicaClient implements RegisterReplicaClient, CircuitBreaker.Guarded {
+
+    private final RegisterReplicaClient delegate;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakingRegisterReplicaClient(RegisterReplicaClient delegate) {
+        this(delegate, new CircuitBreaker());
+    }
+
+    public CircuitBreakingRegisterReplicaClient(RegisterReplicaClient delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public RegisterReplicaState read(Object index) throws Exception {
+        return breaker.call(() -> delegate.read(index));
+    }
+
+    @Override
+    public RegisterReplicaState readMetadata(Object index) throws Exception {
+        return breaker.call(() -> delegate.readMetadata(index));
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+        return breaker.call(() -> delegate.compareAndSetProposal(id, proposal, expect));
+    }
+
+    @Override
+    public boolean writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) throws Exception {
+        return breaker.call(() -> delegate.writeAtomic(id, update, expect_absent, expect));
+    }
+
+    @Override
+    public boolean compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) throws Exception {
+        return breaker.call(() -> delegate.compareAndAppend(id, update, appendOffset, expect));
+    }
+
+    @Override
+    public boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+        return breaker.call(() -> delegate.writeBatch(writes));
+    }
+
+    @Override
+    public long getReplicaId() {
+        return delegate.getReplicaId();
+    }
+
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
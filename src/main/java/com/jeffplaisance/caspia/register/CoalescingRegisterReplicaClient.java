@@ -0,0 +1,100 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.WriteCombiner;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * combines concurrent writes to a replica from every {@link RegisterClient} sharing this client into batches, so many
+ * registers in one process writing to the same replica cost one round trip per batch instead of one per write. each
+ * batch is sent with {@link RegisterReplicaClient#writeBatch(List)}, which {@link JDBCRegisterReplicaClient} sends as
+ * JDBC batches on a single connection. reads are not combined.
+ * <p>
+ * create one instance per replica, for example by wrapping the replica clients created by the replica loader of a
+ * {@link RegisterNamespace}, which shares them between all of its registers. every decorator forwards
+ * {@link RegisterReplicaClient#writeBatch(List)}, so this can wrap a decorated replica, which then sees one call per
+ * batch.
+ */
+@ThreadSafe
+public final class CoalescingRegisterReplicaClient implements RegisterReplicaClient {
+
+    private final RegisterReplicaClient delegate;
+    private final WriteCombiner<RegisterReplicaWrite> combiner;
+
+    public CoalescingRegisterReplicaClient(RegisterReplicaClient delegate) {
+        this(delegate, 256, 0);
+    }
+
+    /**
+     * @param delegate the replica
+     * @param maxBatchSize the maximum number of writes sent in one batch
+     * @param lingerMicros how long to wait for more writes before sending a batch, see {@link WriteCombiner}
+     */
+    public CoalescingRegisterReplicaClient(RegisterReplicaClient delegate, int maxBatchSize, long lingerMicros) {
+        this.delegate = delegate;
+        this.combiner = new WriteCombiner<>(delegate::writeBatch, maxBatchSize, lingerMicros);
+    }
+
+    @Override
+    public RegisterReplicaState read(Object index) throws Exception {
+        return delegate.read(index);
+    }
+
+    @Override
+    public RegisterReplicaState readMetadata(Object index) throws Exception {
+        return delegate.readMetadata(index);
+    }
+
+    @Override
+    public boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+        return combiner.write(RegisterReplicaWrite.compareAndSetProposal(id, proposal, expect));
+    }
+
+    @Override
+    public boolean writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) throws Exception {
+        return combiner.write(RegisterReplicaWrite.writeAtomic(id, update, expect_absent, expect));
+    }
+
+    @Override
+    public boolean compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) throws Exception {
+        return combiner.write(RegisterReplicaWrite.compareAndAppend(id, update, appendOffset, expect));
+    }
+
+    @Override
+    public boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+        return delegate.writeBatch(writes);
+    }
+
+    @Override
+    public long getReplicaId() {
+        return delegate.getReplicaId();
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.jeffplaisance.caspia.common.Base;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * maps register ids onto replica groups. each group is placed on the ring at a number of pseudo random points derived
+ * from its replica ids and an id belongs to the group owning the first point at or after the hash of the id, so adding
+ * or removing a group only moves the ids adjacent to that group's points.
+ */
+@Immutable
+public final class ConsistentHashRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final List<List<Long>> groups;
+    private final int pointsPerGroup;
+    private final TreeMap<Integer, List<Long>> points = new TreeMap<>();
+
+    /**
+     * @param groups the replica groups. each group is a list of replica ids and no two groups may be equal.
+     * @param pointsPerGroup the number of points on the ring for each group. more points spread ids more evenly.
+     */
+    public ConsistentHashRing(List<List<Long>> groups, int pointsPerGroup) {
+        Preconditions.checkArgument(!groups.isEmpty());
+        Preconditions.checkArgument(pointsPerGroup > 0);
+        Preconditions.checkArgument(new HashSet<>(groups).size() == groups.size(), "duplicate group");
+        this.groups = groups.stream().map(ImmutableList::copyOf).collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+        this.pointsPerGroup = pointsPerGroup;
+        for (List<Long> group : this.groups) {
+            final String groupKey = group.toString();
+            for (int i = 0; i < pointsPerGroup; i++) {
+                points.put(HASH.hashString(groupKey + "#" + i, Base.UTF_8).asInt(), group);
+            }
+        }
+    }
+
+    /**
+     * @param id a register id
+     * @return the replica group for id
+     */
+    public List<Long> replicasFor(Object id) {
+        final Map.Entry<Integer, List<Long>> entry = points.ceilingEntry(HASH.hashString(id.toString(), Base.UTF_8).asInt());
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    public List<List<Long>> getGroups() {
+        return groups;
+    }
+
+    public ConsistentHashRing withGroup(List<Long> group) {
+        final List<List<Long>> next = new ArrayList<>(groups);
+        next.add(group);
+        return new ConsistentHashRing(next, pointsPerGroup);
+    }
+
+    public ConsistentHashRing withoutGroup(List<Long> group) {
+        final List<List<Long>> next = new ArrayList<>(groups);
+        Preconditions.checkArgument(next.remove(group), "no such group %s", group);
+        return new ConsistentHashRing(next, pointsPerGroup);
+    }
+}
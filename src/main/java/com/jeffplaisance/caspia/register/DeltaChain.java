@@ -0,0 +1,73 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.Base;
+import com.jeffplaisance.caspia.common.BufferTranscoder;
+import com.jeffplaisance.caspia.common.DeltaTranscoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * encoding of register values stored by clients using a {@link DeltaTranscoder}. a chain is a sequence of frames, each
+ * a 4 byte big endian length followed by that many bytes. the first frame is the base value and every following frame
+ * is a delta against the value produced by the frames before it, so appending a delta never touches the existing bytes.
+ */
+final class DeltaChain {
+
+    private DeltaChain() {}
+
+    static byte[] base(byte[] value) {
+        return ByteBuffer.allocate(4 + value.length).putInt(value.length).put(value).array();
+    }
+
+    /**
+     * encodes value straight into the chain instead of into an intermediate array
+     */
+    static <T> byte[] base(T value, BufferTranscoder<T> transcoder) {
+        final int size = transcoder.encodedSize(value);
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + size).putInt(size);
+        transcoder.encode(value, buffer);
+        return buffer.array();
+    }
+
+    static byte[] append(byte[] chain, byte[] delta) {
+        return ByteBuffer.allocate(chain.length + 4 + delta.length).put(chain).putInt(delta.length).put(delta).array();
+    }
+
+    static <T> T decode(byte[] chain, DeltaTranscoder<T> transcoder) {
+        final ByteBuffer buffer = ByteBuffer.wrap(chain);
+        T value = transcoder instanceof BufferTranscoder
+                ? ((BufferTranscoder<T>) transcoder).decode(nextFrame(buffer))
+                : transcoder.fromBytes(Base.toByteArray(nextFrame(buffer)));
+        while (buffer.hasRemaining()) {
+            value = transcoder.applyDelta(value, nextFrame(buffer));
+        }
+        return value;
+    }
+
+    /**
+     * @return a slice of the next frame, frames are decoded in place
+     */
+    private static ByteBuffer nextFrame(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final ByteBuffer frame = buffer.slice();
+        frame.limit(length);
+        buffer.position(buffer.position() + length);
+        return frame;
+    }
+}
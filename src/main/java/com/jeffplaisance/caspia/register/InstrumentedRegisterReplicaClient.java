@@ -0,0 +1,122 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.CircuitBreaker;
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.ReplicaCallEvent;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * reports the latency, outcome and bytes written of every call to a replica to the metrics and to flight recorder.
+ * replicas are named by replica id.
+ */
+final class InstrumentedRegisterReplicaClient implements RegisterReplicaClient, CircuitBreaker.Guarded {
+
+    private final RegisterReplicaClient delegate;
+    private final String name;
+    private final ConsensusMetrics metrics;
+
+    InstrumentedRegisterReplicaClient(RegisterReplicaClient delegate, ConsensusMetrics metrics) {
+        this.delegate = delegate;
+        this.name = Long.toString(delegate.getReplicaId());
+        this.metrics = metrics;
+    }
+
+    @Override
+    public RegisterReplicaState read(Object index) throws Exception {
+        return instrument("read", index, false, 0, () -> delegate.read(index));
+    }
+
+    @Override
+    public RegisterReplicaState readMetadata(Object index) throws Exception {
+        return instrument("readMetadata", index, false, 0, () -> delegate.readMetadata(index));
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+        return instrument("compareAndSetProposal", id, false, 0, () -> delegate.compareAndSetProposal(id, proposal, expect));
+    }
+
+    @Override
+    public boolean writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) throws Exception {
+        final int valueSize = update.getValue() == null ? 0 : update.getValue().length;
+        return instrument(expect_absent ? "putIfAbsent" : "compareAndSet", id, true, valueSize, () -> delegate.writeAtomic(id, update, expect_absent, expect));
+    }
+
+    @Override
+    public boolean compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) throws Exception {
+        return instrument("compareAndAppend", id, true, update.getValue().length - appendOffset, () -> delegate.compareAndAppend(id, update, appendOffset, expect));
+    }
+
+    @Override
+    public boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+        long valueSize = 0;
+        for (RegisterReplicaWrite write : writes) {
+            final RegisterReplicaState update = write.getUpdate();
+            if (update != null && update.getValue() != null) valueSize += update.getValue().length - Math.max(write.getAppendOffset(), 0);
+        }
+        return instrument("writeBatch", writes.size(), true, valueSize, () -> delegate.writeBatch(writes));
+    }
+
+    @Override
+    public long getReplicaId() {
+        return delegate.getReplicaId();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * @param operation the method called on the replica
+     * @param key the register id, the number of writes for a batch
+     * @param write true to report valueSize to the metrics as bytes written
+     * @param valueSize the size of the value written, 0 for reads
+     * @param call calls the delegate. a Boolean result is reported as whether the call was applied.
+     */
+    private <T> T instrument(String operation, Object key, boolean write, long valueSize, Callable<T> call) throws Exception {
+        final ReplicaCallEvent event = ReplicaCallEvent.beginIfEnabled();
+        final long start = System.nanoTime();
+        boolean success = false;
+        T ret = null;
+        try {
+            ret = call.call();
+            success = true;
+            return ret;
+        } finally {
+            metrics.replicaCall(name, System.nanoTime() - start, success);
+            if (write) metrics.bytesWritten(name, valueSize);
+            if (event != null) event.finish(name, operation, key, success, ret instanceof Boolean ? (Boolean) ret : success, valueSize);
+        }
+    }
+
+    @Override
+    public @Nullable CircuitBreaker getCircuitBreaker() {
+        return delegate instanceof CircuitBreaker.Guarded ? ((CircuitBreaker.Guarded) delegate).getCircuitBreaker() : null;
+    }
+}
@@ -21,10 +21,15 @@ import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
 
 import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 public final class JDBCRegisterReplicaClient implements RegisterReplicaClient {
 
@@ -58,12 +63,13 @@ public final class JDBCRegisterReplicaClient implements RegisterReplicaClient {
         while (true) {
             final long b = in.readByte();
             ret |= (b&0x7F)<<shift;
-            if (b > 0) return ret;
+            // the last byte of a value has the high bit clear and may be 0, for example when the value is 0
+            if (b >= 0) return ret;
             shift += 7;
         }
     }
 
-    private static byte[] serialize(long[] replicaIds) {
+    static byte[] serialize(long[] replicaIds) {
         final ByteArrayDataOutput out = ByteStreams.newDataOutput((replicaIds.length + 1) * 4);
         writeVLong(out, replicaIds.length);
         for (long l : replicaIds) {
@@ -72,7 +78,7 @@ public final class JDBCRegisterReplicaClient implements RegisterReplicaClient {
         return out.toByteArray();
     }
 
-    private static long[] deserialize(byte[] encodedReplicaIds) {
+    static long[] deserialize(byte[] encodedReplicaIds) {
         final ByteArrayDataInput in = ByteStreams.newDataInput(encodedReplicaIds);
         final int length = (int) readVLong(in);
         final long[] ret = new long[length];
@@ -104,6 +110,43 @@ public final class JDBCRegisterReplicaClient implements RegisterReplicaClient {
         }
     }
 
+    @Override
+    public RegisterReplicaState readMetadata(Object id) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                final PreparedStatement ps = c.prepareStatement("select proposal, accepted, val is not null, replicas, quorum_modified, changed_replica from "+table+" where id = ?")
+        ) {
+            ps.setObject(1, id);
+            try (final ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return RegisterReplicaState.EMPTY;
+                return RegisterReplicaState.metadata(
+                        rs.getLong(1),
+                        rs.getLong(2),
+                        rs.getBoolean(3),
+                        deserialize(rs.getBytes(4)),
+                        rs.getByte(5),
+                        rs.getLong(6)
+                );
+            }
+        }
+    }
+
+    @Override
+    public boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                PreparedStatement ps = c.prepareStatement("update "+table+" set proposal = ? where id = ? AND proposal = ? AND accepted = ?")
+        ) {
+            ps.setLong(1, proposal);
+            ps.setObject(2, id);
+            ps.setLong(3, expect.getProposal());
+            ps.setLong(4, expect.getAccepted());
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     @Override
     public boolean compareAndSet(Object id, RegisterReplicaState update, RegisterReplicaState expect) throws Exception {
         if (!enabled) throw new IOException();
@@ -124,6 +167,28 @@ public final class JDBCRegisterReplicaClient implements RegisterReplicaClient {
         }
     }
 
+    @Override
+    public boolean compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) throws Exception {
+        if (!enabled) throw new IOException();
+        try (
+                final Connection c = ds.getConnection();
+                PreparedStatement ps = c.prepareStatement("update "+table+" set proposal = ?, accepted = ?, val = concat(val, ?), replicas = ?, quorum_modified = ?, changed_replica = ? where id = ? AND proposal = ? AND accepted = ? AND length(val) = ?")
+        ) {
+            final byte[] value = update.getValue();
+            ps.setLong(1, update.getProposal());
+            ps.setLong(2, update.getAccepted());
+            ps.setBinaryStream(3, new ByteArrayInputStream(value, appendOffset, value.length - appendOffset), value.length - appendOffset);
+            ps.setBytes(4, serialize(update.getReplicas()));
+            ps.setByte(5, update.getQuorumModified());
+            ps.setLong(6, update.getChangedReplica());
+            ps.setObject(7, id);
+            ps.setLong(8, expect.getProposal());
+            ps.setLong(9, expect.getAccepted());
+            ps.setInt(10, appendOffset);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     @Override
     public boolean putIfAbsent(Object id, RegisterReplicaState update) throws Exception {
         if (!enabled) throw new IOException();
@@ -142,6 +207,113 @@ public final class JDBCRegisterReplicaClient implements RegisterReplicaClient {
         }
     }
 
+    /**
+     * sends the writes as at most four JDBC batches on one connection, see {@link CoalescingRegisterReplicaClient}. the
+     * outcome of every write is taken from its own update count, leave rewriteBatchedStatements and useBulkStmts off.
+     */
+    @Override
+    public boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+        if (!enabled) throw new IOException();
+        final boolean[] ret = new boolean[writes.size()];
+        final List<Integer> proposals = new ArrayList<>();
+        final List<Integer> updates = new ArrayList<>();
+        final List<Integer> appends = new ArrayList<>();
+        final List<Integer> inserts = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            final RegisterReplicaWrite write = writes.get(i);
+            (write.getExpect() == null ? inserts : write.getUpdate() == null ? proposals : write.getAppendOffset() >= 0 ? appends : updates).add(i);
+        }
+        try (final Connection c = ds.getConnection()) {
+            if (!proposals.isEmpty()) {
+                try (final PreparedStatement ps = c.prepareStatement("update "+table+" set proposal = ? where id = ? AND proposal = ? AND accepted = ?")) {
+                    for (int i : proposals) {
+                        final RegisterReplicaWrite write = writes.get(i);
+                        ps.setLong(1, write.getProposal());
+                        ps.setObject(2, write.getId());
+                        ps.setLong(3, write.getExpect().getProposal());
+                        ps.setLong(4, write.getExpect().getAccepted());
+                        ps.addBatch();
+                    }
+                    complete(writes, proposals, ps.executeBatch(), ret);
+                }
+            }
+            if (!updates.isEmpty()) {
+                try (final PreparedStatement ps = c.prepareStatement("update "+table+" set proposal = ?, accepted = ?, val = ?, replicas = ?, quorum_modified = ?, changed_replica = ? where id = ? AND proposal = ? AND accepted = ?")) {
+                    for (int i : updates) {
+                        final RegisterReplicaWrite write = writes.get(i);
+                        final RegisterReplicaState update = write.getUpdate();
+                        ps.setLong(1, update.getProposal());
+                        ps.setLong(2, update.getAccepted());
+                        ps.setBytes(3, update.getValue());
+                        ps.setBytes(4, serialize(update.getReplicas()));
+                        ps.setByte(5, update.getQuorumModified());
+                        ps.setLong(6, update.getChangedReplica());
+                        ps.setObject(7, write.getId());
+                        ps.setLong(8, write.getExpect().getProposal());
+                        ps.setLong(9, write.getExpect().getAccepted());
+                        ps.addBatch();
+                    }
+                    complete(writes, updates, ps.executeBatch(), ret);
+                }
+            }
+            if (!appends.isEmpty()) {
+                try (final PreparedStatement ps = c.prepareStatement("update "+table+" set proposal = ?, accepted = ?, val = concat(val, ?), replicas = ?, quorum_modified = ?, changed_replica = ? where id = ? AND proposal = ? AND accepted = ? AND length(val) = ?")) {
+                    for (int i : appends) {
+                        final RegisterReplicaWrite write = writes.get(i);
+                        final RegisterReplicaState update = write.getUpdate();
+                        final byte[] value = update.getValue();
+                        final int appendOffset = write.getAppendOffset();
+                        ps.setLong(1, update.getProposal());
+                        ps.setLong(2, update.getAccepted());
+                        ps.setBinaryStream(3, new ByteArrayInputStream(value, appendOffset, value.length - appendOffset), value.length - appendOffset);
+                        ps.setBytes(4, serialize(update.getReplicas()));
+                        ps.setByte(5, update.getQuorumModified());
+                        ps.setLong(6, update.getChangedReplica());
+                        ps.setObject(7, write.getId());
+                        ps.setLong(8, write.getExpect().getProposal());
+                        ps.setLong(9, write.getExpect().getAccepted());
+                        ps.setInt(10, appendOffset);
+                        ps.addBatch();
+                    }
+                    complete(writes, appends, ps.executeBatch(), ret);
+                }
+            }
+            if (!inserts.isEmpty()) {
+                try (final PreparedStatement ps = c.prepareStatement("insert ignore into "+table+" (id, proposal, accepted, val, replicas, quorum_modified, changed_replica) values (?, ?, ?, ?, ?, ?, ?)")) {
+                    for (int i : inserts) {
+                        final RegisterReplicaWrite write = writes.get(i);
+                        final RegisterReplicaState update = write.getUpdate();
+                        ps.setObject(1, write.getId());
+                        ps.setLong(2, update.getProposal());
+                        ps.setLong(3, update.getAccepted());
+                        ps.setBytes(4, update.getValue());
+                        ps.setBytes(5, serialize(update.getReplicas()));
+                        ps.setByte(6, update.getQuorumModified());
+                        ps.setLong(7, update.getChangedReplica());
+                        ps.addBatch();
+                    }
+                    complete(writes, inserts, ps.executeBatch(), ret);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static void complete(List<RegisterReplicaWrite> writes, List<Integer> batch, int[] updateCounts, boolean[] ret) throws SQLException {
+        for (int i = 0; i < batch.size(); i++) {
+            final RegisterReplicaWrite write = writes.get(batch.get(i));
+            final int count = updateCounts[i];
+            if (count == Statement.SUCCESS_NO_INFO) {
+                // the write may or may not have been applied, and the row can't tell which of several writers of the
+                // same ballot won, so fail the batch as if the replica had timed out
+                throw new SQLException("no update count for write to register "+write.getId()+", disable rewriteBatchedStatements");
+            } else if (count == Statement.EXECUTE_FAILED) {
+                throw new SQLException("write to register "+write.getId()+" failed");
+            }
+            ret[batch.get(i)] = count > 0;
+        }
+    }
+
     @Override
     public long getReplicaId() {
         return replicaId;
@@ -0,0 +1,250 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.google.common.base.Preconditions;
+import com.jeffplaisance.caspia.common.Base;
+import com.jeffplaisance.caspia.common.ConflictException;
+import com.jeffplaisance.caspia.common.Transcoder;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * leader election with leases on top of a register. the register holds the epoch, the id of the leader and a renewal
+ * counter. the leader renews by incrementing the counter, which takes a single round trip on the fast path. every
+ * takeover increments the epoch, so the epoch can be used to fence writes made by a deposed leader, see
+ * {@link com.jeffplaisance.caspia.log.FencedLogClient}.
+ * <p>
+ * leases do not depend on synchronized clocks. the leader's lease starts when it begins the round which renews it. a
+ * candidate only takes over once it has seen the same renewal counter for longer than the lease duration on its own
+ * clock, padded for clock rate differences, so the leader's lease has expired by then even if the leader is still
+ * running. candidates observe the register with quorum reads which don't take the fast path away from the leader.
+ * <p>
+ * each candidate needs its own instance. call {@link #tryAcquire()} periodically, at least a few times per lease
+ * duration, and check {@link #isLeader()} before doing anything which requires leadership.
+ */
+@NotThreadSafe
+public final class LeaderElection {
+
+    private final RegisterClient<Lease> register;
+    private final String candidateId;
+    private final long leaseNanos;
+    private final long takeoverNanos;
+    private final LongSupplier nanoClock;
+
+    private @Nullable Lease held = null;
+    private long leaseExpiry;
+    private @Nullable Lease observed = null;
+    private long observedAt;
+
+    public LeaderElection(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Object id, String candidateId, long leaseMillis) {
+        this(replicas, replicaLoader, id, candidateId, leaseMillis, System::nanoTime);
+    }
+
+    /**
+     * @param replicas the initial replicas of the register
+     * @param replicaLoader creates the client for a replica id
+     * @param id the register id, shared by all candidates
+     * @param candidateId identifies this candidate, must be unique among candidates
+     * @param leaseMillis the lease duration, must be the same for all candidates
+     * @param nanoClock the clock used to measure leases
+     */
+    public LeaderElection(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Object id, String candidateId, long leaseMillis, LongSupplier nanoClock) {
+        Preconditions.checkArgument(leaseMillis > 0);
+        this.register = new RegisterClient<>(replicas, replicaLoader, new LeaseTranscoder(), id);
+        this.candidateId = candidateId;
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        this.takeoverNanos = leaseNanos + leaseNanos / 100;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * renews the lease if this candidate is the leader, otherwise observes the register and takes over if the current
+     * lease has expired or was released
+     * @return true if this candidate is the leader
+     * @throws Exception if the register could not be read or written. the caller should retry.
+     */
+    public boolean tryAcquire() throws Exception {
+        if (held != null) {
+            if (renew()) return true;
+        }
+        final Lease current = register.readUnsafe();
+        final long now = nanoClock.getAsLong();
+        if (current == null || current.released) {
+            return takeOver(current);
+        }
+        if (!current.equals(observed)) {
+            observed = current;
+            observedAt = now;
+            return false;
+        }
+        if (now - observedAt >= takeoverNanos) {
+            return takeOver(current);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the lease was renewed, false if another candidate has taken over
+     * @throws Exception if the register could not be written. the lease may or may not have been renewed and remains
+     * valid until it expires.
+     */
+    public boolean renew() throws Exception {
+        final Lease lease = held;
+        if (lease == null) return false;
+        final long start = nanoClock.getAsLong();
+        // increments the counter in the register rather than the one in held, since an earlier renewal which threw may
+        // still have reached a quorum. comparing against held would either give up a lease this candidate still holds
+        // or count the earlier renewal's counter, which other candidates may have been observing since before start.
+        final Lease result = update(current -> isHeld(current, lease.epoch) ? new Lease(lease.epoch, candidateId, current.renewals + 1, false) : current);
+        if (isHeld(result, lease.epoch)) {
+            held = result;
+            leaseExpiry = start + leaseNanos;
+            return true;
+        }
+        lost(result);
+        return false;
+    }
+
+    private boolean isHeld(@Nullable Lease lease, long epoch) {
+        return lease != null && lease.epoch == epoch && lease.owner.equals(candidateId) && !lease.released;
+    }
+
+    private boolean takeOver(@Nullable Lease expected) throws Exception {
+        final Lease next = new Lease(expected == null ? 1 : expected.epoch + 1, candidateId, 0, false);
+        final long start = nanoClock.getAsLong();
+        final Lease result = compareAndSet(expected, next);
+        if (next.equals(result)) {
+            held = next;
+            leaseExpiry = start + leaseNanos;
+            return true;
+        }
+        lost(result);
+        return false;
+    }
+
+    private void lost(@Nullable Lease current) {
+        held = null;
+        observed = current;
+        observedAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * gives up leadership so that another candidate can take over without waiting for the lease to expire. the caller
+     * must stop acting as leader before calling this.
+     * @throws Exception if the register could not be written. the lease then expires normally.
+     */
+    public void resign() throws Exception {
+        final Lease lease = held;
+        if (lease == null) return;
+        held = null;
+        final Lease released = new Lease(lease.epoch, candidateId, lease.renewals + 1, true);
+        compareAndSet(lease, released);
+    }
+
+    private @Nullable Lease compareAndSet(@Nullable Lease expected, Lease next) throws Exception {
+        return update(current -> Objects.equals(current, expected) ? next : current);
+    }
+
+    private @Nullable Lease update(Function<Lease, Lease> update) throws Exception {
+        try {
+            return register.write(update);
+        } catch (ConflictException e) {
+            // another candidate's read repaired the register and cost this client its fast path, retry once on the slow path
+            return register.write(update);
+        }
+    }
+
+    /**
+     * @return true if this candidate holds an unexpired lease
+     */
+    public boolean isLeader() {
+        return held != null && leaseExpiry - nanoClock.getAsLong() > 0;
+    }
+
+    /**
+     * @return the epoch of the lease held by this candidate, or 0 if it is not the leader
+     */
+    public long getEpoch() {
+        return isLeader() ? held.epoch : 0;
+    }
+
+    /**
+     * @return the id of the leader as of the last time this candidate read the register, null if unknown or released
+     */
+    public @Nullable String getLeader() {
+        if (isLeader()) return candidateId;
+        return observed == null || observed.released ? null : observed.owner;
+    }
+
+    private static final class Lease {
+        private final long epoch;
+        private final String owner;
+        private final long renewals;
+        private final boolean released;
+
+        private Lease(long epoch, String owner, long renewals, boolean released) {
+            this.epoch = epoch;
+            this.owner = owner;
+            this.renewals = renewals;
+            this.released = released;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Lease lease = (Lease) o;
+            return epoch == lease.epoch && renewals == lease.renewals && released == lease.released && owner.equals(lease.owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{epoch, owner, renewals, released});
+        }
+    }
+
+    private static final class LeaseTranscoder implements Transcoder<Lease> {
+        @Override
+        public byte[] toBytes(Lease lease) {
+            final byte[] owner = lease.owner.getBytes(Base.UTF_8);
+            return ByteBuffer.allocate(17 + owner.length)
+                    .putLong(lease.epoch)
+                    .putLong(lease.renewals)
+                    .put((byte)(lease.released ? 1 : 0))
+                    .put(owner)
+                    .array();
+        }
+
+        @Override
+        public Lease fromBytes(byte[] bytes) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            final long epoch = buffer.getLong();
+            final long renewals = buffer.getLong();
+            final boolean released = buffer.get() != 0;
+            return new Lease(epoch, new String(bytes, 17, bytes.length - 17, Base.UTF_8), renewals, released);
+        }
+    }
+}
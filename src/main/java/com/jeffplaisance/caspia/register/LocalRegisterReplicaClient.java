@@ -16,6 +16,7 @@ limitations under the License.
 
 package com.jeffplaisance.caspia.register;
 
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -67,6 +68,27 @@ public class LocalRegisterReplicaClient implements RegisterReplicaClient {
         return null == state.putIfAbsent(id, update);
     }
 
+    /**
+     * appends the way {@link JDBCRegisterReplicaClient} does, keeping the stored bytes and checking their length, so
+     * that an append against a value of a different length is rejected here too
+     */
+    @Override
+    public boolean compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) throws Exception {
+        doNemesis();
+        final RegisterReplicaState[] appended = new RegisterReplicaState[1];
+        state.computeIfPresent(id, (k, v) -> {
+            final byte[] current = v.getValue();
+            if (v.getAccepted() != expect.getAccepted() || v.getProposal() != expect.getProposal() || current == null || current.length != appendOffset) {
+                return v;
+            }
+            final byte[] next = update.getValue();
+            final byte[] value = Arrays.copyOf(current, next.length);
+            System.arraycopy(next, appendOffset, value, appendOffset, next.length - appendOffset);
+            return appended[0] = new RegisterReplicaState(update.getProposal(), update.getAccepted(), value, update.getReplicas(), update.getQuorumModified(), update.getChangedReplica());
+        });
+        return appended[0] != null;
+    }
+
     @Override
     public long getReplicaId() {
         return replicaId;
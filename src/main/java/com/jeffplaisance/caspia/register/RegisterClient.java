@@ -16,49 +16,141 @@ limitations under the License.
 
 package com.jeffplaisance.caspia.register;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Longs;
 import com.jeffplaisance.caspia.common.Base;
+import com.jeffplaisance.caspia.common.Broadcaster;
+import com.jeffplaisance.caspia.common.BufferTranscoder;
+import com.jeffplaisance.caspia.common.ConflictException;
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.ConsensusMetrics.Phase;
+import com.jeffplaisance.caspia.common.DeltaTranscoder;
 import com.jeffplaisance.caspia.common.Quorum;
+import com.jeffplaisance.caspia.common.QuorumSizes;
 import com.jeffplaisance.caspia.common.ThrowingFunction;
 import com.jeffplaisance.caspia.common.Transcoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * client for a single register. all operations on an instance are serialized internally so one instance may be shared
+ * by any number of threads. sharing a single instance per id within a process (see {@link RegisterNamespace}) keeps
+ * the fast path state in one place so that threads in the same process never duel each other for proposals.
+ */
+@ThreadSafe
 public final class RegisterClient<T> {
     private static final Logger LOG = LoggerFactory.getLogger(RegisterClient.class);
     private static final Comparator<RegisterReplicaState> MAX_ACCEPTED = Ordering.from((RegisterReplicaState a, RegisterReplicaState b) -> Longs.compare(a.getAccepted(), b.getAccepted())).nullsFirst();
 
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Queue<PendingWrite<T>> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    @GuardedBy("lock")
     private List<RegisterReplicaClient> replicas;
     private final Function<Long, ? extends RegisterReplicaClient> replicaLoader;
+    @GuardedBy("lock")
     private int n;
-    private int f;
+    private final QuorumSizes quorumSizes;
 
     private final Transcoder<T> transcoder;
+    // non-null if values are stored as a base value plus a chain of deltas, see DeltaChain
+    private final @Nullable DeltaTranscoder<T> deltaTranscoder;
     private final Object id;
+    private final ConsensusMetrics metrics;
+    private final Broadcaster broadcaster;
 
+    @GuardedBy("lock")
     private boolean fastPath = false;
+    @GuardedBy("lock")
     private RegisterReplicaState fastPathPreviousState;
+    // decoded value of fastPathPreviousState, saves decoding the value this client just encoded on every fast path write
+    @GuardedBy("lock")
+    private @Nullable T fastPathPreviousValue;
+    // number of deltas following the base value in fastPathPreviousState
+    @GuardedBy("lock")
+    private int fastPathDeltas;
+
+    private final long readLeaseNanos;
+    private volatile @Nullable ReadLease<T> readLease;
 
     public RegisterClient(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, Object id) {
+        this(replicas, replicaLoader, transcoder, id, 0);
+    }
+
+    public RegisterClient(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, Object id, long readLeaseMillis) {
+        this(replicas, replicaLoader, transcoder, id, readLeaseMillis, ConsensusMetrics.NOOP);
+    }
 
+    /**
+     * @param readLeaseMillis if greater than zero, every round committed by this client grants it a read lease of this
+     * duration during which {@link #read()} is answered locally from the last committed state. to make this safe every
+     * client which proposes waits out the lease before its accept phase, so every client for a register must be
+     * configured with the same lease duration, and a client taking over a register pays the lease duration once.
+     * if transcoder is a {@link DeltaTranscoder} values are stored as a base value followed by a chain of deltas. every
+     * client for a register must agree on whether deltas are used.
+     * @param metrics receives phase latencies, fast path hits and conflicts for this register and the latency of every
+     * call this client makes to a replica
+     */
+    public RegisterClient(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, Object id, long readLeaseMillis, ConsensusMetrics metrics) {
+        this(replicas, replicaLoader, transcoder, id, readLeaseMillis, metrics, Quorum.broadcaster());
+    }
+
+    /**
+     * @param broadcaster sends requests to the replicas. see
+     * {@link #RegisterClient(List, Function, Transcoder, Object, long, ConsensusMetrics)} for the other parameters.
+     */
+    public RegisterClient(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, Object id, long readLeaseMillis, ConsensusMetrics metrics, Broadcaster broadcaster) {
+        this(replicas, replicaLoader, transcoder, id, readLeaseMillis, metrics, broadcaster, QuorumSizes.MAJORITY);
+    }
+
+    /**
+     * @param quorumSizes the number of replicas needed in each phase, must be the same for every client of the
+     * register. rounds which add or remove a replica also wait for a phase 2 quorum of the replicas on the other side
+     * of the change, and phase 2 quorums are enlarged if needed so that they always include a replica which is not a
+     * {@link RegisterReplicaClient#isWitness() witness}. see {@link #RegisterClient(List, Function, Transcoder, Object, long, ConsensusMetrics)} for the
+     * other parameters.
+     */
+    public RegisterClient(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, Object id, long readLeaseMillis, ConsensusMetrics metrics, Broadcaster broadcaster, QuorumSizes quorumSizes) {
+        Preconditions.checkArgument(readLeaseMillis >= 0);
         this.transcoder = transcoder;
+        this.deltaTranscoder = transcoder instanceof DeltaTranscoder ? (DeltaTranscoder<T>) transcoder : null;
         this.id = id;
-        this.replicas = replicas.stream().map(replicaLoader).collect(Collectors.toList());
-        this.replicaLoader = replicaLoader;
+        this.metrics = metrics;
+        this.broadcaster = broadcaster;
+        this.replicaLoader = replicaId -> new InstrumentedRegisterReplicaClient(replicaLoader.apply(replicaId), metrics);
+        this.replicas = replicas.stream().map(this.replicaLoader).collect(Collectors.toList());
+        this.readLeaseNanos = TimeUnit.MILLISECONDS.toNanos(readLeaseMillis);
+        this.quorumSizes = quorumSizes;
         n = replicas.size();
-        f = Base.lessThanHalf(n);
     }
 
-    private void enableFastPath(RegisterReplicaState nextState) {
+    /**
+     * @param nextState the state which was just accepted by a quorum
+     * @param nextValue the decoded value of nextState
+     * @param nextDeltas the number of deltas in the value of nextState
+     * @param roundStart System.nanoTime() from before the accept round for nextState was started. no competing
+     * proposer can have completed its propose phase before this point so the read lease is measured from here.
+     */
+    private void enableFastPath(RegisterReplicaState nextState, @Nullable T nextValue, int nextDeltas, long roundStart) {
         fastPath = true;
         this.fastPathPreviousState = nextState;
+        this.fastPathPreviousValue = nextValue;
+        this.fastPathDeltas = nextDeltas;
+        if (readLeaseNanos > 0) {
+            readLease = new ReadLease<>(nextValue, roundStart + readLeaseNanos);
+        }
         if (nextState.getQuorumModified() != ReplicaUpdate.UNMODIFIED) {
             if (nextState.getQuorumModified() == ReplicaUpdate.REPLICA_REMOVED) {
                 replicas = replicas.stream().filter(x -> x.getReplicaId() != nextState.getChangedReplica()).collect(Collectors.toList());
@@ -68,30 +160,123 @@ public final class RegisterClient<T> {
                 }
             }
             n = replicas.size();
-            f = Base.lessThanHalf(n);
         }
     }
 
+    /**
+     * applies update to the value of the register. concurrent calls on the same client are coalesced: whichever thread
+     * acquires the client first applies the updates of every waiting caller in arrival order and commits the result in
+     * a single round, then hands each caller the value produced by its own update.
+     * @param update the update function. must not modify its argument, which may be the same instance that was passed
+     * to or returned from an earlier update. if it throws, the exception is rethrown to this
+     * caller only and the update is skipped without affecting the other updates in the same round.
+     * @return the value produced by update. this instance is retained by the client and must not be modified.
+     * @throws Exception if update throws or if the round fails
+     */
     public @Nullable T write(Function<T, T> update) throws Exception {
-        return write(update, x-> ReplicaUpdate.unmodified()).getValue();
+        final PendingWrite<T> pending = new PendingWrite<>(update);
+        pendingWrites.add(pending);
+        lock.lock();
+        try {
+            // if another thread already committed our update while we waited for the lock we are done, otherwise our
+            // update is still in the queue and we commit it along with everything queued behind it
+            if (!pending.isDone()) {
+                writeBatch();
+            }
+            return pending.getResult();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private void writeBatch() {
+        final List<PendingWrite<T>> batch = new ArrayList<>();
+        for (PendingWrite<T> next = pendingWrites.poll(); next != null; next = pendingWrites.poll()) {
+            batch.add(next);
+        }
+        try {
+            writeLocked(value -> {
+                RuntimeException firstError = null;
+                boolean applied = false;
+                for (PendingWrite<T> pending : batch) {
+                    try {
+                        value = pending.apply(value);
+                        applied = true;
+                    } catch (RuntimeException e) {
+                        if (firstError == null) firstError = e;
+                    }
+                }
+                // don't spend a round on a batch in which every update failed
+                if (!applied) throw firstError;
+                return value;
+            }, x -> ReplicaUpdate.unmodified());
+            for (PendingWrite<T> pending : batch) {
+                pending.complete(null);
+            }
+        } catch (Throwable t) {
+            for (PendingWrite<T> pending : batch) {
+                pending.complete(t);
+            }
+        }
     }
 
     public ReplicaUpdate modifyQuorum(Function<List<Long>, ReplicaUpdate> update) throws Exception {
         return write(x -> x, update).getReplicaUpdate();
     }
 
+    /**
+     * linearizable read. answered locally without contacting any replicas if this client holds a read lease, otherwise
+     * equivalent to a write which does not change the value.
+     * @return the value of the register. this instance may be shared with other callers and must not be modified.
+     * @throws Exception if the round fails
+     */
     public @Nullable T read() throws Exception {
+        final ReadLease<T> lease = readLease;
+        if (lease != null && lease.expiresAt - System.nanoTime() > 0) {
+            return lease.value;
+        }
         return write(x -> x);
     }
 
+    public Object getId() {
+        return id;
+    }
+
+    /**
+     * @return true if this client committed the last round on the register and can write in one round trip
+     */
+    public boolean hasFastPath() {
+        lock.lock();
+        try {
+            return fastPath;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private ValueAndReplicaUpdate<T> write(Function<T, T> updateValue, Function<List<Long>, ReplicaUpdate> updateReplicas) throws Exception {
+        lock.lock();
+        try {
+            return writeLocked(updateValue, updateReplicas);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private ValueAndReplicaUpdate<T> writeLocked(Function<T, T> updateValue, Function<List<Long>, ReplicaUpdate> updateReplicas) throws Exception {
         if (fastPath) {
             try {
-                final byte[] previousValue = fastPathPreviousState.getValue();
-                final T next = updateValue.apply(previousValue == null ? null : transcoder.fromBytes(previousValue));
+                final T next = updateValue.apply(fastPathPreviousValue);
                 final List<Long> replicaIds = replicas.stream().map(RegisterReplicaClient::getReplicaId).collect(Collectors.toList());
                 final ReplicaUpdate replicaUpdate = updateReplicas.apply(replicaIds);
-                final byte[] value = next == null ? null : transcoder.toBytes(next);
+                final byte[] previousValue = fastPathPreviousState.getValue();
+                final byte[] delta = deltaTranscoder != null && previousValue != null && next != null && fastPathDeltas < deltaTranscoder.maxDeltas()
+                        ? deltaTranscoder.diff(fastPathPreviousValue, next)
+                        : null;
+                final byte[] value = delta != null ? DeltaChain.append(previousValue, delta) : encode(next);
+                final int nextDeltas = delta != null ? fastPathDeltas + 1 : 0;
                 final RegisterReplicaState nextState = new RegisterReplicaState(
                         fastPathPreviousState.getProposal()+1,
                         fastPathPreviousState.getProposal(),
@@ -99,24 +284,37 @@ public final class RegisterClient<T> {
                         Longs.toArray(replicaIds),
                         replicaUpdate.getType(),
                         replicaUpdate.getChangedReplica());
-                final List<Boolean> responses = Quorum.broadcast(
+                // a replica added by the previous round has never been written, so it is seeded with putIfAbsent
+                final List<ThrowingFunction<RegisterReplicaClient, Boolean, Exception>> acceptFunctions = replicas.stream()
+                        .map(replica -> fastPathPreviousState.getQuorumModified() == ReplicaUpdate.REPLICA_ADDED && fastPathPreviousState.getChangedReplica() == replica.getReplicaId()
+                                ? createReplicaDoInsert(nextState)
+                                : delta != null
+                                        ? createReplicaDoAppend(nextState, previousValue.length, fastPathPreviousState)
+                                        : createReplicaDoAccept(nextState, fastPathPreviousState))
+                        .collect(Collectors.toList());
+                final long roundStart = System.nanoTime();
+                final int acceptQuorum = acceptQuorum(replicaUpdate.getType() == ReplicaUpdate.REPLICA_REMOVED || fastPathPreviousState.getQuorumModified() == ReplicaUpdate.REPLICA_ADDED);
+                final List<Boolean> responses = metrics.time(Phase.ACCEPT, () -> checkQuorum(broadcaster.broadcast(
                         replicas,
-                        n - f,
-                        createReplicaDoAccept(nextState, fastPathPreviousState),
-                        false);
-                if (Base.sum(responses) >= n - f) {
-                    enableFastPath(nextState);
-                    return new ValueAndReplicaUpdate<>(next, replicaUpdate);
-                } else {
-                    throw new Exception();
-                }
+                        acceptQuorum,
+                        acceptFunctions,
+                        false,
+                        Boolean.TRUE::equals), acceptQuorum));
+                metrics.fastPath(true);
+                enableFastPath(nextState, next, nextDeltas, roundStart);
+                return new ValueAndReplicaUpdate<>(next, replicaUpdate);
             } catch (Throwable t) {
+                metrics.fastPath(false);
                 fastPath = false;
                 fastPathPreviousState = null;
+                fastPathPreviousValue = null;
+                fastPathDeltas = 0;
+                readLease = null;
                 Throwables.propagateIfInstanceOf(t, Exception.class);
                 throw Throwables.propagate(t);
             }
         } else {
+            metrics.fastPath(false);
             final List<RegisterReplicaState> initialValues = readInitial();
             return write2(updateValue, updateReplicas, initialValues);
         }
@@ -124,7 +322,7 @@ public final class RegisterClient<T> {
 
     private List<RegisterReplicaState> readInitial() throws Exception {
         while (true) {
-            final List<RegisterReplicaState> initialValues = Quorum.broadcast(replicas, n - f, replica -> replica.read(id), RegisterReplicaState.EMPTY);
+            final List<RegisterReplicaState> initialValues = metrics.time(Phase.READ, () -> broadcaster.broadcast(replicas, phase1(), replica -> replica.readMetadata(id), RegisterReplicaState.EMPTY));
             final RegisterReplicaState maxInitial = initialValues.stream().max(MAX_ACCEPTED).orElse(RegisterReplicaState.EMPTY);
             if (maxInitial.getAccepted() > 0) {
                 final List<Long> maxAcceptedQuorum = Longs.asList(maxInitial.getReplicas());
@@ -132,6 +330,7 @@ public final class RegisterClient<T> {
                     return initialValues;
                 } else {
                     replicas = maxAcceptedQuorum.stream().map(replicaLoader).collect(Collectors.toList());
+                    n = replicas.size();
                 }
             } else {
                 return initialValues;
@@ -142,6 +341,7 @@ public final class RegisterClient<T> {
     private ValueAndReplicaUpdate<T> write2(Function<T, T> update, Function<List<Long>, ReplicaUpdate> updateReplicas, List<RegisterReplicaState> initialValues) throws Exception {
         final long newProposal = initialValues.stream().map(RegisterReplicaState::getProposal).reduce(1L, Math::max)+1;
         final List<Optional<RegisterReplicaState>> proposeResponses = doPropose(initialValues, newProposal);
+        awaitReadLeaseExpiry(System.nanoTime());
         return doAccept(update, updateReplicas, newProposal, proposeResponses);
     }
 
@@ -149,37 +349,118 @@ public final class RegisterClient<T> {
         final List<ThrowingFunction<RegisterReplicaClient, Optional<RegisterReplicaState>, Exception>> proposeFunctions = initialValues.stream()
                 .map(state -> createReplicaDoPropose(newProposal, state))
                 .collect(Collectors.toList());
-        final List<Optional<RegisterReplicaState>> proposeResponses = Quorum.broadcast(replicas, n-f, proposeFunctions, Optional.empty());
-        if (proposeResponses.stream().filter(Optional::isPresent).count() < n-f) {
-            throw new Exception();
+        final int proposeQuorum = phase1();
+        return metrics.time(Phase.PROPOSE, () -> {
+            final List<Optional<RegisterReplicaState>> proposeResponses = broadcaster.broadcast(replicas, proposeQuorum, proposeFunctions, Optional.empty(), Optional::isPresent);
+            if (proposeResponses.stream().filter(Optional::isPresent).count() < proposeQuorum) {
+                throw conflict();
+            }
+            return proposeResponses;
+        });
+    }
+
+    /**
+     * a client holding a read lease started the round that granted it before our propose phase completed, since our
+     * propose would otherwise have made that round fail. waiting out the lease duration from the end of our propose
+     * phase before accepting a new value guarantees that any lease granted by an earlier round has expired. the wait is
+     * padded slightly to allow for clock rate differences between processes.
+     * @param proposeCompleted System.nanoTime() from after the propose phase succeeded
+     */
+    private void awaitReadLeaseExpiry(long proposeCompleted) throws InterruptedException {
+        if (readLeaseNanos > 0) {
+            final long deadline = proposeCompleted + readLeaseNanos + readLeaseNanos / 100;
+            for (long remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            }
         }
-        return proposeResponses;
     }
 
     private ThrowingFunction<RegisterReplicaClient, Optional<RegisterReplicaState>, Exception> createReplicaDoPropose(long newProposal, RegisterReplicaState state) {
         return replica -> {
-            final RegisterReplicaState nextState = new RegisterReplicaState(
-                    newProposal,
-                    state.getAccepted(),
-                    state.getValue(),
-                    state.getReplicas() != null ? state.getReplicas() : new long[0],
-                    state.getQuorumModified(),
-                    state.getChangedReplica());
-            if (replica.writeAtomic(id, nextState,state.getProposal() == 0, state)) {
-                return Optional.of(nextState);
+            // only the proposal changes, so the value is not rewritten
+            final boolean applied = state.getProposal() == 0
+                    ? replica.putIfAbsent(id, new RegisterReplicaState(newProposal, 0, null, new long[0], ReplicaUpdate.UNMODIFIED, 0))
+                    : replica.compareAndSetProposal(id, newProposal, state);
+            if (applied) {
+                return Optional.of(state.withProposal(newProposal));
             }
             return Optional.empty();
         };
     }
 
+    /**
+     * the value accepted in a given round is the same on every replica which accepted it, so quorum reads only fetch
+     * metadata and the value is read from a single replica which accepted the round.
+     * @param accepted the accepted proposal whose value is needed
+     * @param states the states read from the replicas, EMPTY for replicas without a response
+     * @return the value of a replica whose accepted proposal is accepted, or with witnesses see
+     * {@link #readLatestValue(long)}
+     * @throws Exception if no such replica could be read, a {@link ConflictException} if their accepted proposal had
+     * changed
+     */
+    private @Nullable byte[] readValue(long accepted, List<RegisterReplicaState> states) throws Exception {
+        for (RegisterReplicaState state : states) {
+            if (state.getAccepted() == accepted && !state.isMetadataOnly()) return state.getValue();
+        }
+        for (RegisterReplicaState state : states) {
+            if (state.getAccepted() == accepted && !state.hasValue()) return null;
+        }
+        Exception firstError = null;
+        for (int i = 0; i < states.size(); i++) {
+            if (states.get(i).getAccepted() != accepted || replicas.get(i).isWitness()) continue;
+            final List<Optional<ThrowingFunction<RegisterReplicaClient, RegisterReplicaState, Exception>>> functions = new ArrayList<>(Collections.nCopies(states.size(), Optional.empty()));
+            functions.set(i, Optional.of(replica -> replica.read(id)));
+            try {
+                final RegisterReplicaState full = metrics.time(Phase.READ, () -> broadcaster.broadcast2(replicas, 1, functions, RegisterReplicaState.EMPTY)).get(i);
+                if (full.getAccepted() == accepted) return full.getValue();
+            } catch (Exception e) {
+                if (firstError == null) firstError = e;
+            }
+        }
+        if (witnesses() > 0) return readLatestValue(accepted);
+        if (firstError != null) throw new Exception("could not read the value of register "+id, firstError);
+        throw conflict();
+    }
+
+    /**
+     * the replicas which reported a round may all be witnesses. the full replica with the highest accepted proposal
+     * holds a value which is safe to propose if it has reached accepted, or if every full replica responded, see
+     * {@link com.jeffplaisance.caspia.log.LogClient} for why.
+     * @param accepted the highest accepted proposal read from a quorum
+     * @return the value of the full replica with the highest accepted proposal
+     * @throws Exception if no full replica has reached accepted and some full replicas didn't respond
+     */
+    @GuardedBy("lock")
+    private @Nullable byte[] readLatestValue(long accepted) throws Exception {
+        final List<Optional<ThrowingFunction<RegisterReplicaClient, RegisterReplicaState, Exception>>> functions = new ArrayList<>(n);
+        int fullReplicas = 0;
+        for (RegisterReplicaClient replica : replicas) {
+            if (replica.isWitness()) {
+                functions.add(Optional.empty());
+            } else {
+                functions.add(Optional.of(full -> full.read(id)));
+                fullReplicas++;
+            }
+        }
+        final List<RegisterReplicaState> states = metrics.time(Phase.READ, () -> broadcaster.broadcast2(replicas, 1, functions, null, state -> state.getAccepted() >= accepted));
+        final List<RegisterReplicaState> responses = states.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        final RegisterReplicaState latest = responses.stream().max(MAX_ACCEPTED).orElse(RegisterReplicaState.EMPTY);
+        if (latest.getAccepted() < accepted && responses.size() < fullReplicas) {
+            throw new Exception("could not read the value of register "+id+", "+responses.size()+" of "+fullReplicas+" full replicas responded");
+        }
+        return latest.getValue();
+    }
+
     private ValueAndReplicaUpdate<T> doAccept(Function<T, T> update, Function<List<Long>, ReplicaUpdate> updateReplicas, long newProposal, List<Optional<RegisterReplicaState>> proposeResponses) throws Exception {
         final RegisterReplicaState maxInitial = proposeResponses.stream()
                 .flatMap(Base::toStream)
                 .max(MAX_ACCEPTED)
                 .orElse(RegisterReplicaState.EMPTY);
-        final byte[] maxValue = maxInitial.getValue();
-        final T next = update.apply(maxValue == null ? null : transcoder.fromBytes(maxValue));
-        final byte[] nextValue = next == null ? null : transcoder.toBytes(next);
+        final List<RegisterReplicaState> states = proposeResponses.stream().map(state -> state.orElse(RegisterReplicaState.EMPTY)).collect(Collectors.toList());
+        final byte[] maxValue = maxInitial.getAccepted() > 0 ? readValue(maxInitial.getAccepted(), states) : null;
+        final T next = update.apply(decode(maxValue));
+        // values written outside the fast path are always compacted since each replica may hold a different chain
+        final byte[] nextValue = encode(next);
         final ReplicaUpdate replicaUpdate;
         final List<Long> replicaIds = replicas.stream().map(RegisterReplicaClient::getReplicaId).collect(Collectors.toList());
         if (maxInitial.getQuorumModified() == ReplicaUpdate.UNMODIFIED) {
@@ -203,31 +484,165 @@ public final class RegisterClient<T> {
         final List<Optional<ThrowingFunction<RegisterReplicaClient, Boolean, Exception>>> acceptFunctions = proposeResponses.stream()
                 .map(optional -> optional.map(state -> createReplicaDoAccept(nextState, state)))
                 .collect(Collectors.toList());
-        List<Boolean> acceptResponses = Quorum.broadcast2(replicas, n-f, acceptFunctions, Boolean.FALSE);
-        if (Base.sum(acceptResponses) < n-f) {
-            throw new Exception();
-        }
-        enableFastPath(nextState);
+        final long roundStart = System.nanoTime();
+        final int acceptQuorum = acceptQuorum(replicaUpdate.getType() == ReplicaUpdate.REPLICA_REMOVED);
+        metrics.time(Phase.ACCEPT, () -> checkQuorum(broadcaster.broadcast2(replicas, acceptQuorum, acceptFunctions, Boolean.FALSE, Boolean.TRUE::equals), acceptQuorum));
+        enableFastPath(nextState, next, 0, roundStart);
         return new ValueAndReplicaUpdate<>(next, replicaUpdate);
     }
 
+    /**
+     * @return the number of replicas which must respond to a read or propose. accepts are compare and sets against the
+     * state a replica returned to the propose, so a proposer also needs at least a phase 2 quorum here.
+     */
+    @GuardedBy("lock")
+    private int phase1() {
+        return Math.max(quorumSizes.phase1(n), phase2());
+    }
+
+    /**
+     * @return the number of replicas which must accept a value, enlarged if needed so that every phase 2 quorum
+     * includes a replica which is not a {@link RegisterReplicaClient#isWitness() witness}
+     */
+    @GuardedBy("lock")
+    private int phase2() {
+        return Math.max(quorumSizes.phase2(n), witnesses() + 1);
+    }
+
+    @GuardedBy("lock")
+    private int witnesses() {
+        return (int) replicas.stream().filter(RegisterReplicaClient::isWitness).count();
+    }
+
+    /**
+     * a client which has not seen a replica set change yet reads a phase 1 quorum of the old replicas, and the client
+     * which made the change reads a phase 1 quorum of the new replicas as soon as it loses its fast path. the round which
+     * removes a replica and the first round written to an added replica must be seen by both, so besides a phase 2
+     * quorum of this client's replicas they need enough acceptances among the n-1 replicas on the other side of the
+     * change to intersect every phase 1 quorum there, plus one since the changed replica may be among them. this never
+     * exceeds a phase 2 quorum with {@link QuorumSizes#MAJORITY}.
+     * @param changesReplicas true if the round removes a replica or is the first round including an added replica
+     * @return the number of acceptances required for a round
+     */
+    @GuardedBy("lock")
+    private int acceptQuorum(boolean changesReplicas) {
+        final int phase2 = phase2();
+        final int others = n - 1;
+        if (!changesReplicas || others == 0) return phase2;
+        return Math.max(phase2, others - quorumSizes.phase1(others) + 2);
+    }
+
+    private List<Boolean> checkQuorum(List<Boolean> acceptResponses, int acceptQuorum) throws ConflictException {
+        if (Base.sum(acceptResponses) < acceptQuorum) {
+            throw conflict();
+        }
+        return acceptResponses;
+    }
+
+    private ConflictException conflict() {
+        metrics.conflict();
+        return new ConflictException("register "+id+" was modified by another client");
+    }
+
     private ThrowingFunction<RegisterReplicaClient, Boolean, Exception> createReplicaDoAccept(RegisterReplicaState nextState, RegisterReplicaState state) {
         return replica -> replica.writeAtomic(id, nextState, false, state);
     }
 
+    private ThrowingFunction<RegisterReplicaClient, Boolean, Exception> createReplicaDoInsert(RegisterReplicaState nextState) {
+        return replica -> replica.writeAtomic(id, nextState, true, RegisterReplicaState.EMPTY);
+    }
+
+    private ThrowingFunction<RegisterReplicaClient, Boolean, Exception> createReplicaDoAppend(RegisterReplicaState nextState, int appendOffset, RegisterReplicaState state) {
+        return replica -> replica.compareAndAppend(id, nextState, appendOffset, state);
+    }
+
+    private @Nullable byte[] encode(@Nullable T value) {
+        if (value == null) return null;
+        if (deltaTranscoder != null && transcoder instanceof BufferTranscoder) {
+            return DeltaChain.base(value, (BufferTranscoder<T>) transcoder);
+        }
+        final byte[] bytes = transcoder.toBytes(value);
+        return deltaTranscoder != null ? DeltaChain.base(bytes) : bytes;
+    }
+
+    private @Nullable T decode(@Nullable byte[] bytes) {
+        if (bytes == null) return null;
+        return deltaTranscoder != null ? DeltaChain.decode(bytes, deltaTranscoder) : transcoder.fromBytes(bytes);
+    }
+
     @Nullable
     public T readUnsafe() throws Exception {
+        lock.lock();
+        try {
+            return readUnsafeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private @Nullable T readUnsafeLocked() throws Exception {
         final List<RegisterReplicaState> responses = readInitial();
         final RegisterReplicaState maxResponse = responses.stream().max(MAX_ACCEPTED).orElse(RegisterReplicaState.EMPTY);
         if (maxResponse.getAccepted() == 0) return null;
         final long maxAcceptedCount = responses.stream().filter(r -> r.getAccepted() == maxResponse.getAccepted()).count();
-        if (maxAcceptedCount >= n-f) {
-            final byte[] maxValueBytes = maxResponse.getValue();
-            return maxValueBytes == null ? null : transcoder.fromBytes(maxValueBytes);
+        if (maxAcceptedCount >= phase2()) {
+            final byte[] maxValueBytes = readValue(maxResponse.getAccepted(), responses);
+            return decode(maxValueBytes);
         }
         return write2(x -> x, x -> ReplicaUpdate.unmodified(), responses).getValue();
     }
 
+    private static final class ReadLease<T> {
+        private final @Nullable T value;
+        private final long expiresAt;
+
+        private ReadLease(@Nullable T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class PendingWrite<T> {
+        private final Function<T, T> update;
+        private @Nullable T result;
+        private @Nullable Throwable error;
+        private boolean done = false;
+
+        private PendingWrite(Function<T, T> update) {
+            this.update = update;
+        }
+
+        private @Nullable T apply(@Nullable T value) {
+            result = null;
+            error = null;
+            try {
+                return result = update.apply(value);
+            } catch (RuntimeException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        private void complete(@Nullable Throwable roundError) {
+            // an update which failed on its own reports its own error regardless of the outcome of the round
+            if (error == null) error = roundError;
+            done = true;
+        }
+
+        private boolean isDone() {
+            return done;
+        }
+
+        private @Nullable T getResult() throws Exception {
+            if (error != null) {
+                Throwables.propagateIfInstanceOf(error, Exception.class);
+                throw Throwables.propagate(error);
+            }
+            return result;
+        }
+    }
+
     private static final class ValueAndReplicaUpdate<T> {
         private final T value;
         private final ReplicaUpdate replicaUpdate;
@@ -0,0 +1,124 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.Quorum;
+import com.jeffplaisance.caspia.common.QuorumSizes;
+import com.jeffplaisance.caspia.common.Transcoder;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * a set of registers which share a transcoder and a way of choosing the initial replicas for an id. hands out exactly one {@link RegisterClient} per id so
+ * that every thread in the process operating on an id goes through the same fast path state instead of competing
+ * with other clients in the same process. clients are created lazily and are retained for the lifetime of the
+ * namespace.
+ */
+@ThreadSafe
+public final class RegisterNamespace<T> {
+
+    private final Function<Object, List<Long>> placement;
+    private final Function<Long, RegisterReplicaClient> replicaLoader;
+    private final Transcoder<T> transcoder;
+    private final long readLeaseMillis;
+    private final ConsensusMetrics metrics;
+    private final QuorumSizes quorumSizes;
+    private final ConcurrentMap<Long, RegisterReplicaClient> replicaClients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, RegisterClient<T>> clients = new ConcurrentHashMap<>();
+
+    public RegisterNamespace(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder) {
+        this(replicas, replicaLoader, transcoder, 0);
+    }
+
+    /**
+     * @param replicas the initial replica ids for every register in the namespace
+     * @param replicaLoader creates the client for a replica id. called at most once per replica id, the resulting
+     * replica clients are shared by all registers in the namespace.
+     * @param transcoder the transcoder for register values
+     * @param readLeaseMillis the read lease duration for every register in the namespace, see
+     * {@link RegisterClient#RegisterClient(List, Function, Transcoder, Object, long)}
+     */
+    public RegisterNamespace(List<Long> replicas, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, long readLeaseMillis) {
+        this(constant(new ArrayList<>(replicas)), replicaLoader, transcoder, readLeaseMillis);
+    }
+
+    /**
+     * @param placement the initial replica ids for a register id. only consulted when the client for an id is created,
+     * after that the client follows the replica set stored in the register itself, so placement only needs to name a
+     * replica set which holds the register or from which its current replica set can be reached.
+     * @param replicaLoader creates the client for a replica id. called at most once per replica id, the resulting
+     * replica clients are shared by all registers in the namespace.
+     * @param transcoder the transcoder for register values
+     * @param readLeaseMillis the read lease duration for every register in the namespace, see
+     * {@link RegisterClient#RegisterClient(List, Function, Transcoder, Object, long)}
+     */
+    public RegisterNamespace(Function<Object, List<Long>> placement, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, long readLeaseMillis) {
+        this(placement, replicaLoader, transcoder, readLeaseMillis, ConsensusMetrics.NOOP);
+    }
+
+    /**
+     * @param placement the initial replica ids for a register id, see
+     * {@link #RegisterNamespace(Function, Function, Transcoder, long)}
+     * @param replicaLoader creates the client for a replica id. called at most once per replica id.
+     * @param transcoder the transcoder for register values
+     * @param readLeaseMillis the read lease duration for every register in the namespace
+     * @param metrics shared by every register in the namespace
+     */
+    public RegisterNamespace(Function<Object, List<Long>> placement, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, long readLeaseMillis, ConsensusMetrics metrics) {
+        this(placement, replicaLoader, transcoder, readLeaseMillis, metrics, QuorumSizes.MAJORITY);
+    }
+
+    /**
+     * @param quorumSizes the quorum sizes for every register in the namespace, see {@link QuorumSizes}. see
+     * {@link #RegisterNamespace(Function, Function, Transcoder, long, ConsensusMetrics)} for the other parameters.
+     */
+    public RegisterNamespace(Function<Object, List<Long>> placement, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, long readLeaseMillis, ConsensusMetrics metrics, QuorumSizes quorumSizes) {
+        this.placement = placement;
+        this.replicaLoader = replicaId -> replicaClients.computeIfAbsent(replicaId, replicaLoader);
+        this.transcoder = transcoder;
+        this.readLeaseMillis = readLeaseMillis;
+        this.metrics = metrics;
+        this.quorumSizes = quorumSizes;
+    }
+
+    /**
+     * @param id the register id
+     * @return the shared client for id
+     */
+    public RegisterClient<T> get(Object id) {
+        return clients.computeIfAbsent(id, k -> new RegisterClient<>(placement.apply(k), replicaLoader, transcoder, k, readLeaseMillis, metrics, Quorum.broadcaster(), quorumSizes));
+    }
+
+    public @Nullable T write(Object id, Function<T, T> update) throws Exception {
+        return get(id).write(update);
+    }
+
+    public @Nullable T read(Object id) throws Exception {
+        return get(id).read();
+    }
+
+    private static Function<Object, List<Long>> constant(List<Long> replicas) {
+        return id -> replicas;
+    }
+}
@@ -17,6 +17,7 @@ limitations under the License.
 package com.jeffplaisance.caspia.register;
 
 import java.io.Closeable;
+import java.util.List;
 
 public interface RegisterReplicaClient extends Closeable {
 
@@ -50,5 +51,71 @@ public interface RegisterReplicaClient extends Closeable {
         return writeAtomic(id, update, true, RegisterReplicaState.EMPTY);
     }
 
+    /**
+     * compare and set for an update whose value extends the value of expect. a replica can use this to only transmit
+     * or store the bytes of update's value from appendOffset onward. the value held at a given proposal and accepted
+     * number is the same on every replica, so a replica whose state matches expect holds exactly the first appendOffset
+     * bytes of update's value.
+     * @param id the register id
+     * @param update the new state
+     * @param appendOffset the length of the value of expect
+     * @param expect the expected current state, must have a non-null value
+     * @return true if the update was applied
+     */
+    default boolean compareAndAppend(
+            Object id,
+            RegisterReplicaState update,
+            int appendOffset,
+            RegisterReplicaState expect
+    ) throws Exception {
+        return compareAndSet(id, update, expect);
+    }
+
+    /**
+     * reads the state of a register without transferring its value. quorum reads only need the value from one of the
+     * replicas, so replicas which store large values should override this.
+     * @param index the register id
+     * @return the state of the register, may be {@link RegisterReplicaState#isMetadataOnly() metadata only}
+     */
+    default RegisterReplicaState readMetadata(Object index) throws Exception {
+        return read(index);
+    }
+
+    /**
+     * sets the proposal of a register, leaving the rest of its state unchanged, if its proposal and accepted proposal
+     * match expect. replicas which override {@link #readMetadata(Object)} must override this, since expect may not
+     * hold the value.
+     * @param id the register id
+     * @param proposal the new proposal
+     * @param expect the expected current state
+     * @return true if the proposal was updated
+     */
+    default boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+        return compareAndSet(id, expect.withProposal(proposal), expect);
+    }
+
+    /**
+     * applies each write as if by its own call. replicas which can send several writes in one round trip should
+     * override this, see {@link CoalescingRegisterReplicaClient}.
+     * @param writes the writes
+     * @return whether each write was applied, in the order of writes
+     * @throws Exception if the batch failed, in which case any of the writes may or may not have been applied
+     */
+    default boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+        final boolean[] ret = new boolean[writes.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = writes.get(i).apply(this);
+        }
+        return ret;
+    }
+
     long getReplicaId();
+
+    /**
+     * @return true if this replica only stores a digest of each value, see {@link WitnessRegisterReplicaClient}.
+     * decorators must forward this.
+     */
+    default boolean isWitness() {
+        return false;
+    }
 }
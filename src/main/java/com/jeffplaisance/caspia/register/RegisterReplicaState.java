@@ -16,6 +16,10 @@ limitations under the License.
 
 package com.jeffplaisance.caspia.register;
 
+/**
+ * the state of one register on one replica. states returned by {@link RegisterReplicaClient#readMetadata(Object)} only
+ * record whether there is a value, see {@link #isMetadataOnly()}.
+ */
 public final class RegisterReplicaState {
     public static final RegisterReplicaState EMPTY = new RegisterReplicaState(0, 0, null, null, ReplicaUpdate.UNMODIFIED, 0);
     private final long proposal;
@@ -24,14 +28,37 @@ public final class RegisterReplicaState {
     private final long[] replicas;
     private final byte quorumModified;
     private final long changedReplica;
+    private final boolean metadataOnly;
+    private final boolean hasValue;
 
     public RegisterReplicaState(long proposal, long accepted, byte[] value, long[] replicas, byte quorumModified, long changedReplica) {
+        this(proposal, accepted, value, replicas, quorumModified, changedReplica, false, value != null);
+    }
+
+    private RegisterReplicaState(long proposal, long accepted, byte[] value, long[] replicas, byte quorumModified, long changedReplica, boolean metadataOnly, boolean hasValue) {
         this.proposal = proposal;
         this.accepted = accepted;
         this.value = value;
         this.replicas = replicas;
         this.quorumModified = quorumModified;
         this.changedReplica = changedReplica;
+        this.metadataOnly = metadataOnly;
+        this.hasValue = hasValue;
+    }
+
+    /**
+     * @return a state without its value, for {@link RegisterReplicaClient#readMetadata(Object)}
+     */
+    public static RegisterReplicaState metadata(long proposal, long accepted, boolean hasValue, long[] replicas, byte quorumModified, long changedReplica) {
+        return new RegisterReplicaState(proposal, accepted, null, replicas, quorumModified, changedReplica, true, hasValue);
+    }
+
+    /**
+     * @param proposal the proposal of the new state
+     * @return a state which only differs from this one in its proposal
+     */
+    public RegisterReplicaState withProposal(long proposal) {
+        return new RegisterReplicaState(proposal, accepted, value, replicas, quorumModified, changedReplica, metadataOnly, hasValue);
     }
 
     public long getProposal() {
@@ -43,9 +70,25 @@ public final class RegisterReplicaState {
     }
 
     public byte[] getValue() {
+        if (metadataOnly) throw new IllegalStateException("the value of a metadata only state was not read");
         return value;
     }
 
+    /**
+     * @return true if there is a non-null value, including states whose value was not read
+     */
+    public boolean hasValue() {
+        return hasValue;
+    }
+
+    /**
+     * @return true if this state was read without its value, in which case {@link #getValue()} throws
+     * IllegalStateException
+     */
+    public boolean isMetadataOnly() {
+        return metadataOnly;
+    }
+
     public long[] getReplicas() {
         return replicas;
     }
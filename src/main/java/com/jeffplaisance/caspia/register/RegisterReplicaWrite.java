@@ -0,0 +1,114 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * one of the conditional writes of {@link RegisterReplicaClient}, for
+ * {@link RegisterReplicaClient#writeBatch(java.util.List)}
+ */
+@Immutable
+public final class RegisterReplicaWrite {
+
+    private final Object id;
+    private final @Nullable RegisterReplicaState update;
+    private final @Nullable RegisterReplicaState expect;
+    private final long proposal;
+    private final int appendOffset;
+
+    private RegisterReplicaWrite(Object id, @Nullable RegisterReplicaState update, @Nullable RegisterReplicaState expect, long proposal, int appendOffset) {
+        this.id = id;
+        this.update = update;
+        this.expect = expect;
+        this.proposal = proposal;
+        this.appendOffset = appendOffset;
+    }
+
+    /**
+     * see {@link RegisterReplicaClient#compareAndSetProposal(Object, long, RegisterReplicaState)}
+     */
+    public static RegisterReplicaWrite compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) {
+        return new RegisterReplicaWrite(id, null, expect, proposal, -1);
+    }
+
+    /**
+     * see {@link RegisterReplicaClient#writeAtomic(Object, RegisterReplicaState, boolean, RegisterReplicaState)}
+     */
+    public static RegisterReplicaWrite writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) {
+        return new RegisterReplicaWrite(id, update, expect_absent ? null : expect, update.getProposal(), -1);
+    }
+
+    /**
+     * see {@link RegisterReplicaClient#compareAndAppend(Object, RegisterReplicaState, int, RegisterReplicaState)}
+     */
+    public static RegisterReplicaWrite compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) {
+        return new RegisterReplicaWrite(id, update, expect, update.getProposal(), appendOffset);
+    }
+
+    /**
+     * @param update the new state
+     * @return this write with update in place of its new state, for decorators which transform values. an append
+     * becomes a compare and set, since update replaces the whole value.
+     */
+    public RegisterReplicaWrite withUpdate(RegisterReplicaState update) {
+        return new RegisterReplicaWrite(id, update, expect, update.getProposal(), -1);
+    }
+
+    public Object getId() {
+        return id;
+    }
+
+    /**
+     * @return the new state, null if this write only sets the proposal
+     */
+    public @Nullable RegisterReplicaState getUpdate() {
+        return update;
+    }
+
+    /**
+     * @return the expected current state, null if this write expects the register to be absent
+     */
+    public @Nullable RegisterReplicaState getExpect() {
+        return expect;
+    }
+
+    /**
+     * @return the proposal of the state after this write
+     */
+    public long getProposal() {
+        return proposal;
+    }
+
+    /**
+     * @return the length of the value of expect if this write is an append, otherwise -1
+     */
+    public int getAppendOffset() {
+        return appendOffset;
+    }
+
+    /**
+     * @param replica the replica
+     * @return true if this write was applied to replica
+     */
+    public boolean apply(RegisterReplicaClient replica) throws Exception {
+        if (update == null) return replica.compareAndSetProposal(id, proposal, expect);
+        if (appendOffset >= 0) return replica.compareAndAppend(id, update, appendOffset, expect);
+        return replica.writeAtomic(id, update, expect == null, expect == null ? RegisterReplicaState.EMPTY : expect);
+    }
+}
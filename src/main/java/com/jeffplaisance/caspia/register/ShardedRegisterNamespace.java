@@ -0,0 +1,130 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import com.jeffplaisance.caspia.common.Transcoder;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * a {@link RegisterNamespace} spread over many replica groups by a {@link ConsistentHashRing}. every register still
+ * runs consensus on its own replica set, the ring only decides which replica set a register starts on.
+ * <p>
+ * ring changes move registers between groups with {@link RegisterClient#modifyQuorum(Function)}, adding and removing
+ * one replica at a time, so a register is never unavailable or split while it moves. a ring change is done in three
+ * steps. {@link #beginRingChange(ConsistentHashRing)} installs the new ring; until the change is finished clients keep
+ * starting from the old ring, which either holds a register or records where it was moved to. {@link #migrate(Object)}
+ * then has to be called for every register id in the namespace, including ids first written during the change. only
+ * then may {@link #finishRingChange()} switch clients to starting from the new ring. every process using the namespace
+ * must go through the same steps.
+ */
+@ThreadSafe
+public final class ShardedRegisterNamespace<T> {
+
+    private final RegisterNamespace<T> registers;
+    private volatile ConsistentHashRing ring;
+    private volatile @Nullable ConsistentHashRing previousRing = null;
+
+    public ShardedRegisterNamespace(ConsistentHashRing ring, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder) {
+        this(ring, replicaLoader, transcoder, 0);
+    }
+
+    /**
+     * @param ring the initial ring
+     * @param replicaLoader creates the client for a replica id
+     * @param transcoder the transcoder for register values
+     * @param readLeaseMillis the read lease duration for every register in the namespace
+     */
+    public ShardedRegisterNamespace(ConsistentHashRing ring, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, long readLeaseMillis) {
+        this(ring, replicaLoader, transcoder, readLeaseMillis, ConsensusMetrics.NOOP);
+    }
+
+    public ShardedRegisterNamespace(ConsistentHashRing ring, Function<Long, ? extends RegisterReplicaClient> replicaLoader, Transcoder<T> transcoder, long readLeaseMillis, ConsensusMetrics metrics) {
+        this.ring = ring;
+        this.registers = new RegisterNamespace<>(this::initialReplicas, replicaLoader, transcoder, readLeaseMillis, metrics);
+    }
+
+    private List<Long> initialReplicas(Object id) {
+        final ConsistentHashRing previous = previousRing;
+        return (previous != null ? previous : ring).replicasFor(id);
+    }
+
+    public RegisterClient<T> get(Object id) {
+        return registers.get(id);
+    }
+
+    public @Nullable T write(Object id, Function<T, T> update) throws Exception {
+        return registers.write(id, update);
+    }
+
+    public @Nullable T read(Object id) throws Exception {
+        return registers.read(id);
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @param next the new ring
+     * @throws IllegalStateException if a ring change is already in progress
+     */
+    public synchronized void beginRingChange(ConsistentHashRing next) {
+        if (previousRing != null) throw new IllegalStateException("ring change already in progress");
+        previousRing = ring;
+        ring = next;
+    }
+
+    /**
+     * moves the register id onto its replica group in the current ring, one replica at a time. replicas of the new
+     * group are added before replicas of the old group are removed so the register never has fewer replicas than
+     * either group.
+     * @param id the register id
+     * @return true if the replica set of the register was changed
+     * @throws Exception if any of the reconfiguration rounds fails. migrate can be called again to resume.
+     */
+    public boolean migrate(Object id) throws Exception {
+        final RegisterClient<T> client = registers.get(id);
+        final List<Long> target = ring.replicasFor(id);
+        boolean moved = false;
+        while (client.modifyQuorum(current -> nextMigrationStep(current, target)).getType() != ReplicaUpdate.UNMODIFIED) {
+            moved = true;
+        }
+        return moved;
+    }
+
+    private static ReplicaUpdate nextMigrationStep(List<Long> current, List<Long> target) {
+        for (Long replica : target) {
+            if (!current.contains(replica)) return ReplicaUpdate.add(replica);
+        }
+        for (Long replica : current) {
+            if (!target.contains(replica)) return ReplicaUpdate.remove(replica);
+        }
+        return ReplicaUpdate.unmodified();
+    }
+
+    /**
+     * ends the ring change. must only be called once every register in the namespace has been migrated.
+     */
+    public synchronized void finishRingChange() {
+        previousRing = null;
+    }
+}
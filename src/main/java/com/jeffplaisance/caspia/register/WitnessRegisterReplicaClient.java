@@ -0,0 +1,97 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a witness replica stores the ballots and replica set of every register but only a SHA-256 digest in place of each
+ * value. reads return {@link RegisterReplicaState#isMetadataOnly() metadata only} states, so a value can never be read
+ * from a witness. see {@link com.jeffplaisance.caspia.log.WitnessLogReplicaClient}.
+ * <p>
+ * appends are stored as the digest of the whole new value, so a witness receives the full value on every write.
+ */
+public final class WitnessRegisterReplicaClient implements RegisterReplicaClient {
+
+    private static final HashFunction DIGEST = Hashing.sha256();
+
+    private final RegisterReplicaClient delegate;
+
+    public WitnessRegisterReplicaClient(RegisterReplicaClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public RegisterReplicaState read(Object index) throws Exception {
+        return readMetadata(index);
+    }
+
+    @Override
+    public RegisterReplicaState readMetadata(Object index) throws Exception {
+        final RegisterReplicaState state = delegate.readMetadata(index);
+        return RegisterReplicaState.metadata(state.getProposal(), state.getAccepted(), state.hasValue(), state.getReplicas(), state.getQuorumModified(), state.getChangedReplica());
+    }
+
+    @Override
+    public boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+        return delegate.compareAndSetProposal(id, proposal, expect);
+    }
+
+    @Override
+    public boolean writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) throws Exception {
+        return delegate.writeAtomic(id, digest(update), expect_absent, expect);
+    }
+
+    @Override
+    public boolean compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) throws Exception {
+        return delegate.compareAndSet(id, digest(update), expect);
+    }
+
+    @Override
+    public boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+        final List<RegisterReplicaWrite> digests = new ArrayList<>(writes.size());
+        for (RegisterReplicaWrite write : writes) {
+            digests.add(write.getUpdate() == null ? write : write.withUpdate(digest(write.getUpdate())));
+        }
+        return delegate.writeBatch(digests);
+    }
+
+    @Override
+    public long getReplicaId() {
+        return delegate.getReplicaId();
+    }
+
+    @Override
+    public boolean isWitness() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private static RegisterReplicaState digest(RegisterReplicaState state) {
+        if (state.isMetadataOnly() || !state.hasValue()) return state;
+        return new RegisterReplicaState(state.getProposal(), state.getAccepted(), DIGEST.hashBytes(state.getValue()).asBytes(), state.getReplicas(), state.getQuorumModified(), state.getChangedReplica());
+    }
+}
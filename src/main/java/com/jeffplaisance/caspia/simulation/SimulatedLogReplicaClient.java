@@ -0,0 +1,94 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.simulation;
+
+import com.jeffplaisance.caspia.log.LogReplicaClient;
+import com.jeffplaisance.caspia.log.LogReplicaState;
+import com.jeffplaisance.caspia.log.LogReplicaWrite;
+
+import java.util.List;
+
+import java.util.List;
+
+/**
+ * a log replica reached over a {@link SimulatedNetwork}
+ */
+final class SimulatedLogReplicaClient implements LogReplicaClient {
+
+    private final SimulatedNetwork network;
+    private final String name;
+    private final LogReplicaClient delegate;
+
+    SimulatedLogReplicaClient(SimulatedNetwork network, String name, LogReplicaClient delegate) {
+        this.network = network;
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public LogReplicaState read(long index) throws Exception {
+        network.receive(name);
+        final LogReplicaState ret = delegate.read(index);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public LogReplicaState readMetadata(long index) throws Exception {
+        network.receive(name);
+        final LogReplicaState ret = delegate.readMetadata(index);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public boolean compareAndSetProposal(long id, int proposal, LogReplicaState expect) throws Exception {
+        network.receive(name);
+        final boolean ret = delegate.compareAndSetProposal(id, proposal, expect);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+        network.receive(name);
+        final boolean ret = delegate.writeAtomic(id, update, expect_absent, expect);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+        network.receive(name);
+        final boolean[] ret = delegate.writeBatch(writes);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public long readLastIndex() throws Exception {
+        network.receive(name);
+        final long ret = delegate.readLastIndex();
+        network.send(name);
+        return ret;
+    }
+}
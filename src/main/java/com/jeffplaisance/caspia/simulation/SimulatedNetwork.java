@@ -0,0 +1,230 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.simulation;
+
+import com.google.common.base.Preconditions;
+import com.jeffplaisance.caspia.common.Broadcaster;
+import com.jeffplaisance.caspia.common.ThrowingFunction;
+import com.jeffplaisance.caspia.log.LogReplicaClient;
+import com.jeffplaisance.caspia.register.RegisterReplicaClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * a {@link Broadcaster} which sends requests over a simulated network. every request and every response takes a
+ * random delay, so requests from different clients arrive at replicas in random orders. requests to replicas wrapped
+ * by {@link #log(String, LogReplicaClient)} or {@link #register(RegisterReplicaClient)} can also be dropped, either at
+ * random or because the replica is partitioned away, in which case the caller sees a failure once its timeout expires.
+ * <p>
+ * like {@link com.jeffplaisance.caspia.common.Quorum} a broadcast returns as soon as a quorum has responded, but
+ * requests to the remaining replicas are still delivered afterwards, like requests which were already on the wire
+ * when they were cancelled.
+ */
+public final class SimulatedNetwork implements Broadcaster {
+
+    private final Simulator simulator;
+    private final Map<String, Long> isolatedUntil = new HashMap<>();
+    private long minDelayNanos = 50_000;
+    private long maxDelayNanos = 2_000_000;
+    private long timeoutNanos = 20_000_000;
+    private double dropProbability = 0;
+    private double partitionProbability = 0;
+    private long maxPartitionNanos = 0;
+
+    public SimulatedNetwork(Simulator simulator) {
+        this.simulator = simulator;
+    }
+
+    /**
+     * each message takes a uniformly random time between minNanos and maxNanos to be delivered
+     */
+    public void setDelay(long minNanos, long maxNanos) {
+        Preconditions.checkArgument(0 <= minNanos && minNanos <= maxNanos);
+        this.minDelayNanos = minNanos;
+        this.maxDelayNanos = maxNanos;
+    }
+
+    /**
+     * time after which a caller gives up on a request or response which was dropped
+     */
+    public void setTimeout(long nanos) {
+        this.timeoutNanos = nanos;
+    }
+
+    /**
+     * probability that a request, or independently its response, is lost
+     */
+    public void setDropProbability(double probability) {
+        this.dropProbability = probability;
+    }
+
+    /**
+     * on each request, probability that the replica it is sent to is partitioned away from every client for a
+     * uniformly random time up to maxNanos
+     */
+    public void setPartitions(double probability, long maxNanos) {
+        this.partitionProbability = probability;
+        this.maxPartitionNanos = maxNanos;
+    }
+
+    /**
+     * drops every message to or from the named replica for durationNanos
+     */
+    public void isolate(String replica, long durationNanos) {
+        isolatedUntil.put(replica, simulator.now() + durationNanos);
+    }
+
+    /**
+     * ends all partitions and stops dropping messages
+     */
+    public void heal() {
+        isolatedUntil.clear();
+        dropProbability = 0;
+        partitionProbability = 0;
+    }
+
+    public LogReplicaClient log(String name, LogReplicaClient delegate) {
+        return new SimulatedLogReplicaClient(this, name, delegate);
+    }
+
+    public RegisterReplicaClient register(RegisterReplicaClient delegate) {
+        return new SimulatedRegisterReplicaClient(this, delegate);
+    }
+
+    /**
+     * called by replicas when a request arrives
+     * @throws MessageLost if the request was dropped
+     */
+    void receive(String replica) throws MessageLost {
+        if (partitionProbability > 0 && simulator.random().nextDouble() < partitionProbability) {
+            isolate(replica, (long)(simulator.random().nextDouble() * maxPartitionNanos));
+        }
+        if (isIsolated(replica) || drop()) throw new MessageLost();
+    }
+
+    /**
+     * called by replicas before a response is sent
+     * @throws MessageLost if the response was dropped
+     */
+    void send(String replica) throws MessageLost {
+        if (isIsolated(replica) || drop()) throw new MessageLost();
+    }
+
+    private boolean isIsolated(String replica) {
+        final Long until = isolatedUntil.get(replica);
+        return until != null && simulator.now() < until;
+    }
+
+    private boolean drop() {
+        return dropProbability > 0 && simulator.random().nextDouble() < dropProbability;
+    }
+
+    private long delay() {
+        return minDelayNanos + (long)(simulator.random().nextDouble() * (maxDelayNanos - minDelayNanos));
+    }
+
+    @Override
+    public <A, R, E extends Exception> List<R> broadcast2(List<A> replicas, int minSuccessful, List<Optional<ThrowingFunction<A, R, E>>> functions, R failureResponse, Predicate<? super R> successful) throws Exception {
+        final Call<R> call = new Call<>(simulator.currentProcess(), replicas.size(), minSuccessful, successful);
+        for (int i = 0; i < replicas.size(); i++) {
+            if (functions.get(i).isPresent()) {
+                final int replicaIndex = i;
+                final ThrowingFunction<A, R, E> function = functions.get(i).get();
+                final A replica = replicas.get(i);
+                call.remaining++;
+                simulator.schedule(delay(), () -> {
+                    R result = null;
+                    Throwable error = null;
+                    try {
+                        result = function.apply(replica);
+                    } catch (Throwable t) {
+                        error = t;
+                    }
+                    final R finalResult = result;
+                    final Throwable finalError = error;
+                    simulator.schedule(error instanceof MessageLost ? timeoutNanos : delay(), () -> call.respond(replicaIndex, finalResult, finalError));
+                });
+            }
+        }
+        final int recipients = call.remaining;
+        if (recipients > 0) {
+            call.waiting = true;
+            simulator.block();
+        }
+        if (call.responses < minSuccessful) {
+            final String message = call.responses+" of "+recipients+" replicas responded, "+minSuccessful+" required";
+            throw call.firstError != null ? new Exception(message, call.firstError) : new Exception(message);
+        }
+        final List<R> ret = new ArrayList<>();
+        for (R result : call.results) {
+            ret.add(result == null ? failureResponse : result);
+        }
+        return ret;
+    }
+
+    private final class Call<R> {
+        private final Simulator.Process caller;
+        private final List<R> results;
+        private final int minSuccessful;
+        private final Predicate<? super R> successful;
+        private int remaining = 0;
+        private int responses = 0;
+        private int successes = 0;
+        private Throwable firstError = null;
+        private boolean waiting = false;
+
+        private Call(Simulator.Process caller, int replicas, int minSuccessful, Predicate<? super R> successful) {
+            this.caller = caller;
+            this.results = new ArrayList<>(replicas);
+            for (int i = 0; i < replicas; i++) {
+                results.add(null);
+            }
+            this.minSuccessful = minSuccessful;
+            this.successful = successful;
+        }
+
+        private void respond(int replicaIndex, R result, Throwable error) {
+            // responses which arrive after the broadcast returned are ignored
+            if (!waiting) return;
+            remaining--;
+            if (error == null) {
+                results.set(replicaIndex, result);
+                responses++;
+                if (successful.test(result)) successes++;
+            } else if (firstError == null) {
+                firstError = error;
+            }
+            if (successes >= minSuccessful || remaining == 0) {
+                waiting = false;
+                simulator.resume(caller);
+            }
+        }
+    }
+
+    static final class MessageLost extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MessageLost() {
+            super("message lost", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.simulation;
+
+import com.jeffplaisance.caspia.register.RegisterReplicaClient;
+import com.jeffplaisance.caspia.register.RegisterReplicaState;
+import com.jeffplaisance.caspia.register.RegisterReplicaWrite;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * a register replica reached over a {@link SimulatedNetwork}, named by its replica id
+ */
+final class SimulatedRegisterReplicaClient implements RegisterReplicaClient {
+
+    private final SimulatedNetwork network;
+    private final String name;
+    private final RegisterReplicaClient delegate;
+
+    SimulatedRegisterReplicaClient(SimulatedNetwork network, RegisterReplicaClient delegate) {
+        this.network = network;
+        this.name = Long.toString(delegate.getReplicaId());
+        this.delegate = delegate;
+    }
+
+    @Override
+    public RegisterReplicaState read(Object index) throws Exception {
+        network.receive(name);
+        final RegisterReplicaState ret = delegate.read(index);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public RegisterReplicaState readMetadata(Object index) throws Exception {
+        network.receive(name);
+        final RegisterReplicaState ret = delegate.readMetadata(index);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public boolean isWitness() {
+        return delegate.isWitness();
+    }
+
+    @Override
+    public boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+        network.receive(name);
+        final boolean ret = delegate.compareAndSetProposal(id, proposal, expect);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public boolean writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) throws Exception {
+        network.receive(name);
+        final boolean ret = delegate.writeAtomic(id, update, expect_absent, expect);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public boolean compareAndAppend(Object id, RegisterReplicaState update, int appendOffset, RegisterReplicaState expect) throws Exception {
+        network.receive(name);
+        final boolean ret = delegate.compareAndAppend(id, update, appendOffset, expect);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+        network.receive(name);
+        final boolean[] ret = delegate.writeBatch(writes);
+        network.send(name);
+        return ret;
+    }
+
+    @Override
+    public long getReplicaId() {
+        return delegate.getReplicaId();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.simulation;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+
+/**
+ * deterministic single threaded scheduler with virtual time. events run in order of virtual time, ties in the order
+ * they were scheduled, and all randomness comes from a single seeded {@link Random}, so a run is completely determined
+ * by its seed and can be replayed.
+ * <p>
+ * client code is blocking, so each simulated process runs on its own thread, but only one thread runs at a time: the
+ * scheduler hands a baton to a process and waits until the process blocks in {@link #sleep(long)} or on a simulated
+ * network call before running anything else. code running in a process must not block on anything else, in particular
+ * two processes must not share a client which serializes its callers with a lock.
+ * <p>
+ * not thread safe, all methods must be called from the thread calling {@link #run(long)} or from a process.
+ */
+public final class Simulator {
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private final Random random;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final Semaphore schedulerPermit = new Semaphore(0);
+    private long now = 0;
+    private long sequence = 0;
+    private long eventCount = 0;
+    private Process current = null;
+    private Throwable failure = null;
+    private boolean stopped = false;
+
+    public Simulator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return the current virtual time in nanoseconds since the start of the simulation
+     */
+    public long now() {
+        return now;
+    }
+
+    public Random random() {
+        return random;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * runs action on the scheduler after delayNanos of virtual time
+     */
+    public void schedule(long delayNanos, Runnable action) {
+        Preconditions.checkArgument(delayNanos >= 0);
+        events.add(new Event(now + delayNanos, sequence++, action));
+    }
+
+    /**
+     * starts a process which runs task. a process which throws fails the simulation.
+     */
+    public void spawn(String name, Task task) {
+        final Process process = new Process(name);
+        final Thread thread = new Thread(() -> {
+            process.permit.acquireUninterruptibly();
+            try {
+                if (!stopped) task.run();
+            } catch (Stopped e) {
+                // simulation ended while the process was blocked
+            } catch (Throwable t) {
+                if (failure == null) failure = new AssertionError("process "+name+" failed at "+now+"ns", t);
+            } finally {
+                process.finished = true;
+                schedulerPermit.release();
+            }
+        }, "simulated-"+name);
+        thread.setDaemon(true);
+        process.thread = thread;
+        processes.add(process);
+        thread.start();
+        schedule(0, () -> resume(process));
+    }
+
+    /**
+     * blocks the calling process for nanos of virtual time
+     */
+    public void sleep(long nanos) {
+        final Process process = currentProcess();
+        schedule(nanos, () -> resume(process));
+        block();
+    }
+
+    /**
+     * runs events until every process has finished, a process fails or virtual time passes untilNanos. processes which
+     * have not finished are then stopped by throwing an Error out of the call on which they are blocked.
+     * @return true if every process finished
+     * @throws AssertionError if a process failed
+     */
+    public boolean run(long untilNanos) {
+        while (failure == null && !events.isEmpty() && events.peek().time <= untilNanos && !allFinished()) {
+            final Event event = events.poll();
+            now = event.time;
+            eventCount++;
+            event.action.run();
+        }
+        final boolean finished = allFinished();
+        stopped = true;
+        for (Process process : processes) {
+            if (!process.finished) resume(process);
+        }
+        if (failure != null) {
+            if (failure instanceof AssertionError) throw (AssertionError)failure;
+            throw new AssertionError(failure);
+        }
+        return finished;
+    }
+
+    private boolean allFinished() {
+        for (Process process : processes) {
+            if (!process.finished) return false;
+        }
+        return true;
+    }
+
+    Process currentProcess() {
+        Preconditions.checkState(current != null && current.thread == Thread.currentThread(), "not called from a simulated process");
+        return current;
+    }
+
+    /**
+     * gives the baton back to the scheduler and waits until the calling process is resumed
+     */
+    void block() {
+        if (stopped) throw new Stopped();
+        final Process process = currentProcess();
+        schedulerPermit.release();
+        process.permit.acquireUninterruptibly();
+        if (stopped) throw new Stopped();
+    }
+
+    /**
+     * hands the baton to process and waits until it blocks or finishes. called from the scheduler.
+     */
+    void resume(Process process) {
+        if (process.finished) return;
+        current = process;
+        process.permit.release();
+        schedulerPermit.acquireUninterruptibly();
+        current = null;
+    }
+
+    static final class Process {
+        private final String name;
+        private final Semaphore permit = new Semaphore(0);
+        private Thread thread;
+        private volatile boolean finished = false;
+
+        private Process(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Stopped extends Error {
+        private static final long serialVersionUID = 1L;
+
+        private Stopped() {
+            super("simulation stopped", null, false, false);
+        }
+    }
+
+    private static final class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            final int cmp = Long.compare(time, o.time);
+            return cmp != 0 ? cmp : Long.compare(sequence, o.sequence);
+        }
+    }
+}
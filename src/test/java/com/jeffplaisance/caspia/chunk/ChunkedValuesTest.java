@@ -0,0 +1,210 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.chunk;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.jeffplaisance.caspia.common.Quorum;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChunkedValuesTest {
+
+    private static final int CHUNK_SIZE = 4;
+    // version, length, chunk size and chunk count followed by one hash per chunk
+    private static final int MANIFEST_HEADER = 17;
+    private static final int HASH_LENGTH = 32;
+
+    @Test
+    public void testRoundTripAtChunkBoundaries() throws Exception {
+        final ChunkedValues chunks = new ChunkedValues(stores(3), CHUNK_SIZE, Quorum.broadcaster());
+        for (int length : new int[]{0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 2 * CHUNK_SIZE - 1, 2 * CHUNK_SIZE, 2 * CHUNK_SIZE + 1, 3 * CHUNK_SIZE}) {
+            final byte[] value = value(length);
+            final byte[] manifest = chunks.write(new ByteArrayInputStream(value));
+            // a value which is a multiple of the chunk size has no empty trailing chunk
+            final int count = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            assertEquals("length " + length, MANIFEST_HEADER + count * HASH_LENGTH, manifest.length);
+            assertEquals(length, ChunkedValues.getLength(manifest));
+            assertArrayEquals("length " + length, value, ByteStreams.toByteArray(chunks.read(manifest)));
+            assertArrayEquals("length " + length, value, readByteByByte(chunks.read(manifest)));
+        }
+    }
+
+    @Test
+    public void testShortReadsFromTheValueAreJoinedIntoFullChunks() throws Exception {
+        final ChunkedValues chunks = new ChunkedValues(stores(3), CHUNK_SIZE, Quorum.broadcaster());
+        final byte[] value = value(3 * CHUNK_SIZE + 2);
+        final byte[] manifest = chunks.write(new TricklingInputStream(value));
+        assertEquals(MANIFEST_HEADER + 4 * HASH_LENGTH, manifest.length);
+        assertArrayEquals(manifest, chunks.write(new ByteArrayInputStream(value)));
+        assertArrayEquals(value, ByteStreams.toByteArray(chunks.read(manifest)));
+    }
+
+    @Test
+    public void testChunkMissingFromSomeStoresIsReadFromAnother() throws Exception {
+        final List<HidingChunkStore> stores = stores(3);
+        final ChunkedValues chunks = new ChunkedValues(stores, CHUNK_SIZE, Quorum.broadcaster());
+        final byte[] value = value(3 * CHUNK_SIZE);
+        final byte[] manifest = chunks.write(new ByteArrayInputStream(value));
+        // the write only waits for a majority, so the last store may or may not have each chunk
+        for (HidingChunkStore store : stores.subList(0, 2)) {
+            store.hide(Arrays.copyOfRange(value, CHUNK_SIZE, 2 * CHUNK_SIZE));
+        }
+        stores.get(2).putChunk(value, CHUNK_SIZE, CHUNK_SIZE);
+        assertArrayEquals(value, ByteStreams.toByteArray(chunks.read(manifest)));
+    }
+
+    @Test
+    public void testChunkMissingFromEveryStore() throws Exception {
+        final List<HidingChunkStore> stores = stores(3);
+        final ChunkedValues chunks = new ChunkedValues(stores, CHUNK_SIZE, Quorum.broadcaster());
+        final byte[] value = value(3 * CHUNK_SIZE);
+        final byte[] manifest = chunks.write(new ByteArrayInputStream(value));
+        for (HidingChunkStore store : stores) {
+            store.hide(Arrays.copyOfRange(value, CHUNK_SIZE, 2 * CHUNK_SIZE));
+        }
+        final InputStream in = chunks.read(manifest);
+        // the chunks before the missing one are still returned
+        final byte[] first = new byte[CHUNK_SIZE];
+        ByteStreams.readFully(in, first);
+        assertArrayEquals(Arrays.copyOf(value, CHUNK_SIZE), first);
+        try {
+            in.read();
+            fail();
+        } catch (IOException expected) {
+        }
+        // the length comes from the manifest alone
+        assertEquals(value.length, ChunkedValues.getLength(manifest));
+    }
+
+    @Test
+    public void testChunkWithWrongContentsIsIgnored() throws Exception {
+        final List<HidingChunkStore> stores = stores(3);
+        final ChunkedValues chunks = new ChunkedValues(stores, CHUNK_SIZE, Quorum.broadcaster());
+        final byte[] value = value(2 * CHUNK_SIZE);
+        final byte[] manifest = chunks.write(new ByteArrayInputStream(value));
+        final byte[] hash = hash(Arrays.copyOf(value, CHUNK_SIZE));
+        for (HidingChunkStore store : stores) {
+            store.corrupt(hash);
+        }
+        try {
+            ByteStreams.toByteArray(chunks.read(manifest));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static List<HidingChunkStore> stores(int count) {
+        final List<HidingChunkStore> stores = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            stores.add(new HidingChunkStore());
+        }
+        return stores;
+    }
+
+    private static byte[] value(int length) {
+        final byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) (i * 31 + 7);
+        }
+        return value;
+    }
+
+    private static byte[] hash(byte[] chunk) {
+        return Hashing.sha256().hashBytes(chunk).asBytes();
+    }
+
+    private static byte[] readByteByByte(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b = in.read(); b >= 0; b = in.read()) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * returns at most one byte per call to read
+     */
+    private static final class TricklingInputStream extends InputStream {
+        private final ByteArrayInputStream in;
+
+        private TricklingInputStream(byte[] value) {
+            this.in = new ByteArrayInputStream(value);
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return len == 0 ? 0 : in.read(b, off, 1);
+        }
+    }
+
+    /**
+     * a local chunk store which can lose chunks or return the wrong bytes for them
+     */
+    private static final class HidingChunkStore implements ChunkStore {
+        private final LocalChunkStore store = new LocalChunkStore();
+        private final Set<ByteBuffer> hidden = ConcurrentHashMap.newKeySet();
+        private final Set<ByteBuffer> corrupted = ConcurrentHashMap.newKeySet();
+
+        private void putChunk(byte[] value, int offset, int length) {
+            store.put(hash(Arrays.copyOfRange(value, offset, offset + length)), value, offset, length);
+        }
+
+        private void hide(byte[] chunk) {
+            hidden.add(ByteBuffer.wrap(hash(chunk)));
+        }
+
+        private void corrupt(byte[] hash) {
+            corrupted.add(ByteBuffer.wrap(hash));
+        }
+
+        @Override
+        public void put(byte[] hash, byte[] chunk, int offset, int length) {
+            store.put(hash, chunk, offset, length);
+        }
+
+        @Override
+        public @Nullable byte[] get(byte[] hash) {
+            if (hidden.contains(ByteBuffer.wrap(hash))) return null;
+            final byte[] chunk = store.get(hash);
+            if (chunk != null && corrupted.contains(ByteBuffer.wrap(hash))) {
+                chunk[0]++;
+            }
+            return chunk;
+        }
+    }
+}
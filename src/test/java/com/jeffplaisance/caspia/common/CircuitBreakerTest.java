@@ -0,0 +1,218 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long SLOW_CALL = 10;
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final long OPEN = 100;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, SLOW_CALL, MAX_IN_FLIGHT, OPEN, TimeUnit.NANOSECONDS, clock::get);
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        failCalls(FAILURE_THRESHOLD - 1);
+        // a success resets the count
+        assertEquals("ok", breaker.call(() -> "ok"));
+        failCalls(FAILURE_THRESHOLD - 1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        failCalls(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable());
+        assertRejected();
+    }
+
+    @Test
+    public void testSlowCallsCountAsFailures() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            call(SLOW_CALL);
+        }
+        call(SLOW_CALL - 1);
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            call(SLOW_CALL);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(SLOW_CALL);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testProbeClosesBreaker() throws Exception {
+        failCalls(FAILURE_THRESHOLD);
+        clock.addAndGet(OPEN - 1);
+        assertFalse(breaker.isAvailable());
+        assertFalse(breaker.tryAcquire());
+        clock.addAndGet(1);
+        assertTrue(breaker.isAvailable());
+        // only one probe is let through
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable());
+        assertFalse(breaker.tryAcquire());
+        breaker.release(0, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("ok", breaker.call(() -> "ok"));
+    }
+
+    @Test
+    public void testFailedProbeReopensBreaker() throws Exception {
+        failCalls(FAILURE_THRESHOLD);
+        clock.addAndGet(OPEN);
+        failCalls(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // the open duration starts over from the failed probe
+        clock.addAndGet(OPEN - 1);
+        assertRejected();
+        clock.addAndGet(1);
+        assertTrue(breaker.isAvailable());
+    }
+
+    @Test
+    public void testLimitsCallsInFlight() throws Exception {
+        for (int i = 0; i < MAX_IN_FLIGHT; i++) {
+            assertTrue(breaker.tryAcquire());
+        }
+        assertFalse(breaker.isAvailable());
+        assertRejected();
+        assertEquals(MAX_IN_FLIGHT, breaker.getInFlight());
+        breaker.release(0, true);
+        assertTrue(breaker.isAvailable());
+        assertEquals("ok", breaker.call(() -> "ok"));
+        // rejections are not failures
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testInterruptedCallsAreAbandoned() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            try {
+                breaker.call(() -> {
+                    throw new InterruptedException();
+                });
+                fail();
+            } catch (InterruptedException expected) {
+            }
+            try {
+                breaker.call(() -> {
+                    // a replica client which turned the interrupt into an I/O error
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted");
+                });
+                fail();
+            } catch (IOException expected) {
+                assertTrue(Thread.interrupted());
+            }
+        }
+        assertEquals(0, breaker.getInFlight());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testAbandonedProbeLeavesBreakerOpen() throws Exception {
+        failCalls(FAILURE_THRESHOLD);
+        clock.addAndGet(OPEN);
+        assertTrue(breaker.tryAcquire());
+        breaker.abandon();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(0, breaker.getInFlight());
+        assertFalse(breaker.isAvailable());
+        clock.addAndGet(OPEN);
+        assertTrue(breaker.isAvailable());
+    }
+
+    @Test
+    public void testQuorumSkipsOpenReplicas() throws Exception {
+        final List<GuardedReplica> replicas = Arrays.asList(
+                new GuardedReplica(breaker),
+                new GuardedReplica(null),
+                new GuardedReplica(new CircuitBreaker())
+        );
+        failCalls(FAILURE_THRESHOLD);
+        final List<GuardedReplica> called = Collections.synchronizedList(new ArrayList<>());
+        final List<Boolean> results = Quorum.broadcast(replicas, 2, replica -> called.add(replica), false);
+        assertEquals(Arrays.asList(false, true, true), results);
+        assertEquals(2, called.size());
+        assertFalse(called.contains(replicas.get(0)));
+        // too few replicas are available for a quorum, so none are called
+        called.clear();
+        try {
+            Quorum.broadcast(replicas, 3, replica -> called.add(replica), false);
+            fail();
+        } catch (ReplicaUnavailableException expected) {
+        }
+        assertTrue(called.isEmpty());
+    }
+
+    private void failCalls(int calls) throws Exception {
+        for (int i = 0; i < calls; i++) {
+            try {
+                breaker.call(() -> {
+                    throw new IOException("replica down");
+                });
+                fail();
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    private void call(long latency) throws Exception {
+        breaker.call(() -> clock.addAndGet(latency));
+    }
+
+    private void assertRejected() throws Exception {
+        try {
+            breaker.call(() -> {
+                throw new AssertionError("rejected calls must not run");
+            });
+            fail();
+        } catch (ReplicaUnavailableException expected) {
+        }
+    }
+
+    private static final class GuardedReplica implements CircuitBreaker.Guarded {
+        private final @Nullable CircuitBreaker breaker;
+
+        private GuardedReplica(@Nullable CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+
+        @Override
+        public @Nullable CircuitBreaker getCircuitBreaker() {
+            return breaker;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryExecutorTest {
+
+    private static final RetryPolicy POLICY = new RetryPolicy(2, 1, 1, TimeUnit.MILLISECONDS, 2, 2, 1000);
+    private static final long INITIAL_BACKOFF = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testFastPathHolderDoesNotYield() throws Exception {
+        for (long backoff : backoffsAfterConflict(true)) {
+            assertTrue(backoff < INITIAL_BACKOFF);
+        }
+    }
+
+    @Test
+    public void testOtherClientsYield() throws Exception {
+        long max = 0;
+        for (long backoff : backoffsAfterConflict(false)) {
+            max = Math.max(max, backoff);
+        }
+        // each backoff is uniform below 1000 times the initial backoff, 100 of them all being below it is impossible
+        // in practice
+        assertTrue(max >= INITIAL_BACKOFF);
+    }
+
+    @Test
+    public void testInterruptedOperationIsNotRetried() throws Exception {
+        final List<Long> backoffs = new ArrayList<>();
+        final RetryExecutor executor = new RetryExecutor(POLICY, ConsensusMetrics.NOOP, backoffs::add);
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.call(() -> {
+                attempts.incrementAndGet();
+                throw new InterruptedException();
+            });
+            fail();
+        } catch (InterruptedException expected) {
+            // the interrupt is restored for the caller, clear it so it doesn't leak into other tests
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(1, attempts.get());
+        assertTrue(backoffs.isEmpty());
+    }
+
+    /**
+     * runs 100 operations which conflict once, losing the fast path like LogClient and RegisterClient do, then
+     * succeed
+     */
+    private static List<Long> backoffsAfterConflict(boolean heldFastPath) throws Exception {
+        final List<Long> backoffs = new ArrayList<>();
+        final RetryExecutor executor = new RetryExecutor(POLICY, ConsensusMetrics.NOOP, backoffs::add);
+        for (int i = 0; i < 100; i++) {
+            final AtomicBoolean fastPath = new AtomicBoolean(heldFastPath);
+            final AtomicBoolean conflicted = new AtomicBoolean(false);
+            final String result = executor.call(() -> {
+                if (conflicted.compareAndSet(false, true)) {
+                    fastPath.set(false);
+                    throw new ConflictException("conflict");
+                }
+                return "done";
+            }, fastPath::get);
+            assertEquals("done", result);
+        }
+        return backoffs;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.common;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteCombinerTest {
+
+    // long enough that a test only finishes if the linger ends early on a full batch
+    private static final long LINGER_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    @Test(timeout = 10000)
+    public void testCombinesQueuedWrites() throws Exception {
+        final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        final WriteCombiner<Integer> combiner = new WriteCombiner<>(writes -> {
+            batches.add(new ArrayList<>(writes));
+            final boolean[] ret = new boolean[writes.size()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = writes.get(i) % 2 == 0;
+            }
+            return ret;
+        }, 16, LINGER_MICROS);
+        final List<Future<Boolean>> results = writeConcurrently(combiner, 16);
+        assertEquals(1, batches.size());
+        assertEquals(16, batches.get(0).size());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i % 2 == 0, results.get(i).get());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSplitsAtMaxBatchSize() throws Exception {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final WriteCombiner<Integer> combiner = new WriteCombiner<>(writes -> {
+            batchSizes.add(writes.size());
+            return new boolean[writes.size()];
+        }, 4, LINGER_MICROS);
+        for (Future<Boolean> result : writeConcurrently(combiner, 8)) {
+            assertFalse(result.get());
+        }
+        assertEquals(Arrays.asList(4, 4), batchSizes);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedBatchFailsEveryWrite() throws Exception {
+        final WriteCombiner<Integer> combiner = new WriteCombiner<>(writes -> {
+            throw new IOException("replica down");
+        }, 4, LINGER_MICROS);
+        for (Future<Boolean> result : writeConcurrently(combiner, 4)) {
+            try {
+                result.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedCallerStillSendsBatch() throws Exception {
+        final List<Boolean> interruptedDuringBatch = new ArrayList<>();
+        final WriteCombiner<Integer> combiner = new WriteCombiner<>(writes -> {
+            interruptedDuringBatch.add(Thread.currentThread().isInterrupted());
+            return new boolean[]{true};
+        }, 1, 0);
+        Thread.currentThread().interrupt();
+        try {
+            assertTrue(combiner.write(0));
+        } finally {
+            // the interrupt is restored for the caller, clear it so it doesn't leak into other tests
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(Collections.singletonList(false), interruptedDuringBatch);
+    }
+
+    /**
+     * writes 0 until count - 1 from count threads which start together
+     * @return the result of each write, all of which are done
+     */
+    private static List<Future<Boolean>> writeConcurrently(WriteCombiner<Integer> combiner, int count) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final int write = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return combiner.write(write);
+                }));
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            return futures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
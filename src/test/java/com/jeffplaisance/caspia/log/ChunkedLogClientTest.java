@@ -0,0 +1,117 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.google.common.io.ByteStreams;
+import com.jeffplaisance.caspia.chunk.ChunkStore;
+import com.jeffplaisance.caspia.chunk.ChunkedValues;
+import com.jeffplaisance.caspia.chunk.LocalChunkStore;
+import com.jeffplaisance.caspia.common.Quorum;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedLogClientTest {
+
+    private static final int CHUNK_SIZE = 8;
+
+    @Test
+    public void testEntriesAtChunkBoundaries() throws Exception {
+        final ChunkedLogClient log = new ChunkedLogClient(log(), chunks(stores()));
+        final int[] lengths = {0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 4 * CHUNK_SIZE};
+        for (int i = 0; i < lengths.length; i++) {
+            assertTrue(log.write(i + 1, new ByteArrayInputStream(value(lengths[i]))));
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            assertEquals(lengths[i], log.readLength(i + 1));
+            try (InputStream in = log.read(i + 1)) {
+                assertArrayEquals("length " + lengths[i], value(lengths[i]), ByteStreams.toByteArray(in));
+            }
+        }
+        assertNull(log.read(lengths.length + 1));
+        assertEquals(-1, log.readLength(lengths.length + 1));
+    }
+
+    @Test
+    public void testLosingWriteLeavesCommittedEntry() throws Exception {
+        final LogClient replicated = log();
+        final ChunkedValues chunks = chunks(stores());
+        final ChunkedLogClient first = new ChunkedLogClient(replicated, chunks);
+        final ChunkedLogClient second = new ChunkedLogClient(replicated, chunks);
+        assertTrue(first.write(1, new ByteArrayInputStream(value(CHUNK_SIZE + 1))));
+        assertFalse(second.write(1, new ByteArrayInputStream(value(2 * CHUNK_SIZE))));
+        assertEquals(CHUNK_SIZE + 1, second.readLength(1));
+        assertArrayEquals(value(CHUNK_SIZE + 1), ByteStreams.toByteArray(second.read(1)));
+    }
+
+    @Test
+    public void testReadAfterChunksAreMissing() throws Exception {
+        final LogClient replicated = log();
+        final ChunkedLogClient writer = new ChunkedLogClient(replicated, chunks(stores()));
+        assertTrue(writer.write(1, new ByteArrayInputStream(value(2 * CHUNK_SIZE + 1))));
+        // a reader whose stores never received the chunks still finds the manifest in the log
+        final ChunkedLogClient reader = new ChunkedLogClient(replicated, chunks(stores()));
+        assertEquals(2 * CHUNK_SIZE + 1, reader.readLength(1));
+        final InputStream in = reader.read(1);
+        try {
+            in.read();
+            fail();
+        } catch (IOException expected) {
+        }
+        // the entry is still readable from the stores which hold its chunks
+        assertArrayEquals(value(2 * CHUNK_SIZE + 1), ByteStreams.toByteArray(writer.read(1)));
+    }
+
+    private static LogClient log() {
+        final List<LogReplicaClient> replicas = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            replicas.add(new LocalLogReplicaClient());
+        }
+        return new LogClient(replicas);
+    }
+
+    private static List<ChunkStore> stores() {
+        final List<ChunkStore> stores = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            stores.add(new LocalChunkStore());
+        }
+        return stores;
+    }
+
+    private static ChunkedValues chunks(List<ChunkStore> stores) {
+        return new ChunkedValues(stores, CHUNK_SIZE, Quorum.broadcaster());
+    }
+
+    private static byte[] value(int length) {
+        final byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) (length + i);
+        }
+        return value;
+    }
+}
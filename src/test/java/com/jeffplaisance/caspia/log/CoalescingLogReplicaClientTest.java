@@ -0,0 +1,86 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * combining itself is tested by {@link com.jeffplaisance.caspia.common.WriteCombinerTest}, this checks that writes
+ * reach the replica through writeBatch past every decorator
+ */
+public class CoalescingLogReplicaClientTest {
+
+    @Test
+    public void testWritesReachReplicaAsBatches() throws Exception {
+        final RecordingReplica replica = new RecordingReplica();
+        final LogReplicaClient decorated = new InstrumentedLogReplicaClient(
+                new CircuitBreakingLogReplicaClient(new WitnessLogReplicaClient(replica)),
+                "replica",
+                ConsensusMetrics.NOOP
+        );
+        final CoalescingLogReplicaClient client = new CoalescingLogReplicaClient(decorated);
+        final LogReplicaState update = new LogReplicaState(1, 1, new byte[]{1, 2, 3});
+        assertTrue(client.putIfAbsent(0, update));
+        assertFalse(client.putIfAbsent(0, update));
+        final boolean[] applied = client.writeBatch(Arrays.asList(
+                LogReplicaWrite.writeAtomic(1, update, true, LogReplicaState.EMPTY),
+                LogReplicaWrite.writeAtomic(2, update, true, LogReplicaState.EMPTY)
+        ));
+        assertArrayEquals(new boolean[]{true, true}, applied);
+        assertEquals(Arrays.asList(1, 1, 2), replica.batchSizes);
+        for (int i = 0; i <= 2; i++) {
+            // the witness stored a digest in place of the value
+            assertEquals(32, replica.read(i).getValueLength());
+        }
+    }
+
+    private static final class RecordingReplica implements LogReplicaClient {
+        private final LogReplicaClient delegate = new LocalLogReplicaClient();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public LogReplicaState read(long index) throws Exception {
+            return delegate.read(index);
+        }
+
+        @Override
+        public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+            return delegate.writeAtomic(id, update, expect_absent, expect);
+        }
+
+        @Override
+        public boolean[] writeBatch(List<LogReplicaWrite> writes) throws Exception {
+            batchSizes.add(writes.size());
+            return LogReplicaClient.super.writeBatch(writes);
+        }
+
+        @Override
+        public long readLastIndex() throws Exception {
+            return delegate.readLastIndex();
+        }
+    }
+}
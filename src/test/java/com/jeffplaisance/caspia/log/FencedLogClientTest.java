@@ -0,0 +1,113 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import com.jeffplaisance.caspia.common.NonDelimitedStringTranscoder;
+import com.jeffplaisance.caspia.common.Transcoder;
+import com.jeffplaisance.caspia.register.LeaderElection;
+import com.jeffplaisance.caspia.register.LocalRegisterReplicaClient;
+import com.jeffplaisance.caspia.register.RegisterReplicaClient;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FencedLogClientTest {
+
+    private static final Transcoder<String> STRINGS = new NonDelimitedStringTranscoder();
+
+    @Test
+    public void testSnapshotAfterLeaderChangeFencesDeposedLeader() throws Exception {
+        final List<LogReplicaClient> replicas = Arrays.asList(new LocalLogReplicaClient(), new LocalLogReplicaClient(), new LocalLogReplicaClient());
+        final LogClient writer = new LogClient(replicas);
+        writer.write(1, FencedLogClient.stamp(1, STRINGS.toBytes("a")));
+        // leader 2 takes over
+        writer.write(2, FencedLogClient.stamp(2, STRINGS.toBytes("b")));
+        // leader 1 was deposed but doesn't know it yet
+        writer.write(3, FencedLogClient.stamp(1, STRINGS.toBytes("x")));
+        writer.write(4, FencedLogClient.stamp(2, STRINGS.toBytes("c")));
+
+        final BiFunction<FencedLogClient.State<String>, byte[], FencedLogClient.State<String>> transition =
+                FencedLogClient.transition((state, entry) -> state + STRINGS.fromBytes(entry));
+        final MemorySnapshotStore<FencedLogClient.State<String>> snapshots = new MemorySnapshotStore<>(FencedLogClient.transcoder(STRINGS));
+
+        final ReplicatedStateMachine<FencedLogClient.State<String>> fromStart =
+                new ReplicatedStateMachine<>(new LogClient(replicas), transition, new FencedLogClient.State<>(0, ""), snapshots, 2);
+        fromStart.recover();
+        assertEquals("abc", fromStart.getState().getState());
+        assertEquals(2, fromStart.getState().getMaxEpoch());
+
+        // the latest snapshot is at index 4, replace it with the one at index 2, after the leader change and before the
+        // deposed leader's entry
+        snapshots.saved = snapshots.atIndex2;
+        final ReplicatedStateMachine<FencedLogClient.State<String>> fromSnapshot =
+                new ReplicatedStateMachine<>(new LogClient(replicas), transition, new FencedLogClient.State<>(0, ""), snapshots, 2);
+        fromSnapshot.recover();
+        assertEquals("abc", fromSnapshot.getState().getState());
+        assertEquals(2, fromSnapshot.getState().getMaxEpoch());
+
+        // a fenced reader starting after the snapshot uses the snapshot's epoch
+        final Map<Long, RegisterReplicaClient> electionReplicas = new HashMap<>();
+        for (long i = 0; i < 3; i++) {
+            electionReplicas.put(i, new LocalRegisterReplicaClient(i));
+        }
+        final LeaderElection election = new LeaderElection(Arrays.asList(0L, 1L, 2L), electionReplicas::get, "leader", "reader", 1000);
+        final FencedLogClient reader = new FencedLogClient(new LogClient(replicas), election, snapshots.atIndex2.getState().getMaxEpoch());
+        final FencedLogClient.Entry entry = reader.read(3);
+        assertNotNull(entry);
+        assertTrue(entry.isFenced());
+        assertFalse(reader.read(4).isFenced());
+        // the reader never acquired the lease, so it can't write
+        try {
+            reader.stamp(STRINGS.toBytes("y"));
+            fail();
+        } catch (Exception expected) {
+        }
+    }
+
+    private static final class MemorySnapshotStore<S> implements SnapshotStore<S> {
+        private final Transcoder<S> transcoder;
+        private @Nullable Snapshot<S> saved = null;
+        private @Nullable Snapshot<S> atIndex2 = null;
+
+        private MemorySnapshotStore(Transcoder<S> transcoder) {
+            this.transcoder = transcoder;
+        }
+
+        @Override
+        public @Nullable Snapshot<S> load() {
+            return saved;
+        }
+
+        @Override
+        public void save(Snapshot<S> snapshot) {
+            // round trip through the transcoder like a durable store would
+            saved = new Snapshot<>(snapshot.getIndex(), transcoder.fromBytes(transcoder.toBytes(snapshot.getState())));
+            if (snapshot.getIndex() == 2) atIndex2 = saved;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.log;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LogClientTest {
+
+    @Test(timeout = 10000)
+    public void testReadFromCancelsReadsInFlightAfterFailure() throws Exception {
+        final int replicaCount = 3;
+        final int parallelism = 4;
+        // every replica blocks reads of indexes 2 until 4 until they are interrupted
+        final CountDownLatch blocked = new CountDownLatch(replicaCount * (parallelism - 1));
+        final CountDownLatch interrupted = new CountDownLatch(replicaCount * (parallelism - 1));
+        final List<LogReplicaClient> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            replicas.add(new BlockingReplica(1, blocked, interrupted));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            new LogClient(replicas).readFrom(1, 10, parallelism, executor);
+            fail();
+        } catch (Exception expected) {
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testReadFromCancelsReadsInFlightWhenInterrupted() throws Exception {
+        final int replicaCount = 3;
+        final int parallelism = 4;
+        final CountDownLatch blocked = new CountDownLatch(replicaCount * parallelism);
+        final CountDownLatch interrupted = new CountDownLatch(replicaCount * parallelism);
+        final List<LogReplicaClient> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            replicas.add(new BlockingReplica(0, blocked, interrupted));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        final AtomicBoolean interruptRestored = new AtomicBoolean();
+        final Thread reader = new Thread(() -> {
+            try {
+                new LogClient(replicas).readFrom(1, 10, parallelism, executor);
+            } catch (Throwable t) {
+                thrown.set(t);
+                interruptRestored.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        reader.start();
+        blocked.await();
+        reader.interrupt();
+        reader.join();
+        executor.shutdown();
+        assertTrue(thrown.get() instanceof InterruptedException);
+        assertTrue(interruptRestored.get());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * blocks reads until they are interrupted, except reads of failIndex, which fail once every other read is blocked
+     */
+    private static final class BlockingReplica implements LogReplicaClient {
+        private final long failIndex;
+        private final CountDownLatch blocked;
+        private final CountDownLatch interrupted;
+
+        private BlockingReplica(long failIndex, CountDownLatch blocked, CountDownLatch interrupted) {
+            this.failIndex = failIndex;
+            this.blocked = blocked;
+            this.interrupted = interrupted;
+        }
+
+        @Override
+        public LogReplicaState read(long index) throws Exception {
+            if (index == failIndex) {
+                blocked.await();
+                throw new IOException("replica down");
+            }
+            blocked.countDown();
+            try {
+                new CountDownLatch(1).await();
+                throw new AssertionError();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean writeAtomic(long id, LogReplicaState update, boolean expect_absent, LogReplicaState expect) throws Exception {
+            throw new IOException("read only");
+        }
+
+        @Override
+        public long readLastIndex() {
+            return 10;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.ConsensusMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * combining itself is tested by {@link com.jeffplaisance.caspia.common.WriteCombinerTest}, this checks that writes
+ * reach the replica through writeBatch past every decorator
+ */
+public class CoalescingRegisterReplicaClientTest {
+
+    @Test
+    public void testWritesReachReplicaAsBatches() throws Exception {
+        final RecordingReplica replica = new RecordingReplica();
+        final RegisterReplicaClient decorated = new InstrumentedRegisterReplicaClient(
+                new CircuitBreakingRegisterReplicaClient(new WitnessRegisterReplicaClient(replica)),
+                ConsensusMetrics.NOOP
+        );
+        final CoalescingRegisterReplicaClient client = new CoalescingRegisterReplicaClient(decorated);
+        final RegisterReplicaState update = new RegisterReplicaState(1, 1, new byte[]{1, 2, 3}, new long[]{1}, ReplicaUpdate.UNMODIFIED, 0);
+        assertTrue(client.putIfAbsent("register0", update));
+        assertFalse(client.putIfAbsent("register0", update));
+        final boolean[] applied = client.writeBatch(Arrays.asList(
+                RegisterReplicaWrite.writeAtomic("register1", update, true, RegisterReplicaState.EMPTY),
+                RegisterReplicaWrite.writeAtomic("register2", update, true, RegisterReplicaState.EMPTY)
+        ));
+        assertArrayEquals(new boolean[]{true, true}, applied);
+        assertEquals(Arrays.asList(1, 1, 2), replica.batchSizes);
+        for (int i = 0; i <= 2; i++) {
+            // the witness stored a digest in place of the value
+            assertEquals(32, replica.read("register"+i).getValue().length);
+        }
+    }
+
+    private static final class RecordingReplica implements RegisterReplicaClient {
+        private final RegisterReplicaClient delegate = new LocalRegisterReplicaClient(1);
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public RegisterReplicaState read(Object index) throws Exception {
+            return delegate.read(index);
+        }
+
+        @Override
+        public boolean writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) throws Exception {
+            return delegate.writeAtomic(id, update, expect_absent, expect);
+        }
+
+        @Override
+        public boolean[] writeBatch(List<RegisterReplicaWrite> writes) throws Exception {
+            batchSizes.add(writes.size());
+            return RegisterReplicaClient.super.writeBatch(writes);
+        }
+
+        @Override
+        public long getReplicaId() {
+            return delegate.getReplicaId();
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,121 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConsistentHashRingTest {
+
+    private static final int IDS = 10000;
+    private static final int POINTS_PER_GROUP = 100;
+    private static final List<List<Long>> GROUPS = Arrays.asList(
+            Arrays.asList(0L, 1L, 2L),
+            Arrays.asList(3L, 4L, 5L),
+            Arrays.asList(6L, 7L, 8L),
+            Arrays.asList(9L, 10L, 11L)
+    );
+
+    @Test
+    public void testSpreadsIdsEvenly() {
+        final ConsistentHashRing ring = new ConsistentHashRing(GROUPS, POINTS_PER_GROUP);
+        final Map<List<Long>, Integer> counts = new HashMap<>();
+        for (List<Long> group : place(ring)) {
+            counts.merge(group, 1, Integer::sum);
+        }
+        assertEquals(GROUPS.size(), counts.size());
+        for (int count : counts.values()) {
+            // 2500 each if perfectly even, with 100 points per group every group is well within 30% of that
+            assertTrue(String.valueOf(counts), count > IDS / GROUPS.size() * 0.7 && count < IDS / GROUPS.size() * 1.3);
+        }
+    }
+
+    @Test
+    public void testAddingGroupOnlyMovesIdsToIt() {
+        final ConsistentHashRing ring = new ConsistentHashRing(GROUPS, POINTS_PER_GROUP);
+        final List<Long> added = Arrays.asList(12L, 13L, 14L);
+        final List<List<Long>> before = place(ring);
+        final List<List<Long>> after = place(ring.withGroup(added));
+        int moved = 0;
+        for (int i = 0; i < IDS; i++) {
+            if (!before.get(i).equals(after.get(i))) {
+                assertEquals(added, after.get(i));
+                moved++;
+            }
+        }
+        // a fifth of the ids if perfectly even
+        assertTrue(String.valueOf(moved), moved > IDS / 5 * 0.7 && moved < IDS / 5 * 1.3);
+    }
+
+    @Test
+    public void testRemovingGroupOnlyMovesItsIds() {
+        final ConsistentHashRing ring = new ConsistentHashRing(GROUPS, POINTS_PER_GROUP);
+        final List<Long> removed = GROUPS.get(1);
+        final List<List<Long>> before = place(ring);
+        final List<List<Long>> after = place(ring.withoutGroup(removed));
+        for (int i = 0; i < IDS; i++) {
+            if (before.get(i).equals(removed)) {
+                assertNotEquals(removed, after.get(i));
+            } else {
+                assertEquals(before.get(i), after.get(i));
+            }
+        }
+        // adding the group back restores the original placement
+        assertEquals(before, place(ring.withoutGroup(removed).withGroup(removed)));
+    }
+
+    @Test
+    public void testPlacementDoesNotDependOnGroupOrder() {
+        final List<List<Long>> reversed = new ArrayList<>(GROUPS);
+        Collections.reverse(reversed);
+        assertEquals(place(new ConsistentHashRing(GROUPS, POINTS_PER_GROUP)), place(new ConsistentHashRing(reversed, POINTS_PER_GROUP)));
+    }
+
+    @Test
+    public void testRejectsDuplicateAndUnknownGroups() {
+        final ConsistentHashRing ring = new ConsistentHashRing(GROUPS, POINTS_PER_GROUP);
+        try {
+            ring.withGroup(GROUPS.get(0));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            ring.withoutGroup(Arrays.asList(12L, 13L, 14L));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static List<List<Long>> place(ConsistentHashRing ring) {
+        final List<List<Long>> ret = new ArrayList<>();
+        for (int i = 0; i < IDS; i++) {
+            ret.add(ring.replicasFor("register"+i));
+        }
+        return ret;
+    }
+}
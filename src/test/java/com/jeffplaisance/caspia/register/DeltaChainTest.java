@@ -0,0 +1,89 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.Base;
+import com.jeffplaisance.caspia.common.DeltaTranscoder;
+import com.jeffplaisance.caspia.common.IntArrayTranscoder;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DeltaChainTest {
+
+    private static final IntArrayTranscoder INTS = new IntArrayTranscoder();
+
+    @Test
+    public void testIntArrayChainRoundTrip() {
+        int[] value = {1, 2, 3};
+        byte[] chain = DeltaChain.base(value, INTS);
+        assertArrayEquals(DeltaChain.base(INTS.toBytes(value)), chain);
+        for (int i = 4; i <= 10; i++) {
+            final int[] next = Arrays.copyOf(value, value.length + 1);
+            next[value.length] = i;
+            final byte[] delta = INTS.diff(value, next);
+            assertEquals(4, delta.length);
+            chain = DeltaChain.append(chain, delta);
+            value = next;
+            assertArrayEquals(value, DeltaChain.decode(chain, INTS));
+        }
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, DeltaChain.decode(chain, INTS));
+    }
+
+    @Test
+    public void testIntArrayDiffOnlyForExtensions() {
+        assertArrayEquals(new byte[0], INTS.diff(new int[]{1, 2}, new int[]{1, 2}));
+        assertNull(INTS.diff(new int[]{1, 2}, new int[]{1}));
+        assertNull(INTS.diff(new int[]{1, 2}, new int[]{1, 3, 4}));
+    }
+
+    @Test
+    public void testChainOfByteArrayTranscoder() {
+        // not a BufferTranscoder, so the base is decoded with fromBytes and deltas are copied out of the chain
+        final StringAppendTranscoder strings = new StringAppendTranscoder();
+        byte[] chain = DeltaChain.base(strings.toBytes("ab"));
+        chain = DeltaChain.append(chain, strings.diff("ab", "abc"));
+        chain = DeltaChain.append(chain, strings.diff("abc", "abcde"));
+        assertEquals("abcde", DeltaChain.decode(chain, strings));
+    }
+
+    private static final class StringAppendTranscoder implements DeltaTranscoder<String> {
+        @Override
+        public byte[] toBytes(String s) {
+            return s.getBytes(Base.UTF_8);
+        }
+
+        @Override
+        public String fromBytes(byte[] bytes) {
+            return new String(bytes, Base.UTF_8);
+        }
+
+        @Override
+        public byte[] diff(String previous, String next) {
+            return next.startsWith(previous) ? toBytes(next.substring(previous.length())) : null;
+        }
+
+        @Override
+        public String applyDelta(String value, byte[] delta) {
+            return value + fromBytes(delta);
+        }
+    }
+}
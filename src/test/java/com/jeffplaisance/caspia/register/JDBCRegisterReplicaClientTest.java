@@ -0,0 +1,46 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class JDBCRegisterReplicaClientTest {
+
+    @Test
+    public void testReplicaIdsRoundTrip() {
+        assertRoundTrip();
+        assertRoundTrip(0);
+        assertRoundTrip(0, 1, 2);
+        // one, two, three and ten byte varlongs, and the multi-byte boundaries
+        assertRoundTrip(127, 128, 16383, 16384, 2097151, 2097152);
+        assertRoundTrip(Long.MAX_VALUE, Long.MIN_VALUE, -1);
+    }
+
+    @Test
+    public void testEncodedLengths() {
+        assertEquals(2, JDBCRegisterReplicaClient.serialize(new long[]{127}).length);
+        assertEquals(3, JDBCRegisterReplicaClient.serialize(new long[]{128}).length);
+        assertEquals(11, JDBCRegisterReplicaClient.serialize(new long[]{-1}).length);
+    }
+
+    private static void assertRoundTrip(long... replicaIds) {
+        assertArrayEquals(replicaIds, JDBCRegisterReplicaClient.deserialize(JDBCRegisterReplicaClient.serialize(replicaIds)));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LeaderElectionTest {
+
+    @Test
+    public void testRenewAfterUnacknowledgedRenewal() throws Exception {
+        final Map<Long, ReplyDroppingReplica> replicas = new HashMap<>();
+        for (long i = 0; i < 3; i++) {
+            replicas.put(i, new ReplyDroppingReplica(new LocalRegisterReplicaClient(i)));
+        }
+        final AtomicLong clock = new AtomicLong();
+        final LeaderElection leader = new LeaderElection(Arrays.asList(0L, 1L, 2L), replicas::get, "leader", "a", 1000, clock::get);
+        final LeaderElection candidate = new LeaderElection(Arrays.asList(0L, 1L, 2L), replicas::get, "leader", "b", 1000, clock::get);
+        assertTrue(leader.tryAcquire());
+        final long epoch = leader.getEpoch();
+        // twice the renewal reaches every replica but no reply makes it back, leaving the register two renewals ahead
+        clock.set(TimeUnit.MILLISECONDS.toNanos(100));
+        setDropReplies(replicas, true);
+        for (int i = 0; i < 2; i++) {
+            try {
+                leader.renew();
+                fail();
+            } catch (Exception expected) {
+            }
+        }
+        setDropReplies(replicas, false);
+        // the candidate starts timing the lease from the last lost renewal
+        assertFalse(candidate.tryAcquire());
+        clock.set(TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(leader.renew());
+        assertEquals(epoch, leader.getEpoch());
+        // past the candidate's takeover time for the lost renewal, but within the lease from the renewal at 200ms
+        clock.set(TimeUnit.MILLISECONDS.toNanos(100 + 1010));
+        assertTrue(leader.isLeader());
+        assertFalse(candidate.tryAcquire());
+        assertEquals("a", candidate.getLeader());
+    }
+
+    private static void setDropReplies(Map<Long, ReplyDroppingReplica> replicas, boolean dropReplies) {
+        for (ReplyDroppingReplica replica : replicas.values()) {
+            replica.dropReplies = dropReplies;
+        }
+    }
+
+    /**
+     * applies writes but fails them as if the reply had been lost while dropReplies is set
+     */
+    private static final class ReplyDroppingReplica implements RegisterReplicaClient {
+        private final RegisterReplicaClient delegate;
+        private volatile boolean dropReplies = false;
+
+        private ReplyDroppingReplica(RegisterReplicaClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public RegisterReplicaState read(Object index) throws Exception {
+            return delegate.read(index);
+        }
+
+        @Override
+        public boolean writeAtomic(Object id, RegisterReplicaState update, boolean expect_absent, RegisterReplicaState expect) throws Exception {
+            final boolean ret = delegate.writeAtomic(id, update, expect_absent, expect);
+            if (dropReplies) throw new IOException("reply lost");
+            return ret;
+        }
+
+        @Override
+        public boolean compareAndSetProposal(Object id, long proposal, RegisterReplicaState expect) throws Exception {
+            final boolean ret = delegate.compareAndSetProposal(id, proposal, expect);
+            if (dropReplies) throw new IOException("reply lost");
+            return ret;
+        }
+
+        @Override
+        public long getReplicaId() {
+            return delegate.getReplicaId();
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,119 @@
+/*
+Copyright 2023 Jeff Plaisance
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.jeffplaisance.caspia.register;
+
+import com.jeffplaisance.caspia.common.IntArrayTranscoder;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RegisterClientDeltaTest {
+
+    private static final IntArrayTranscoder INTS = new IntArrayTranscoder();
+    private static final List<Long> REPLICA_IDS = Arrays.asList(0L, 1L, 2L);
+
+    @Test(timeout = 10000)
+    public void testAppendsDeltasAndCompacts() throws Exception {
+        final Map<Long, LocalRegisterReplicaClient> replicas = replicas();
+        final RegisterClient<int[]> client = new RegisterClient<>(REPLICA_IDS, replicas::get, INTS, "register");
+        final int maxDeltas = INTS.maxDeltas();
+        // the first write takes the slow path and stores a base, the fast path then appends a delta per write until the
+        // chain is full, and the next write stores a new base
+        for (int i = 1; i <= maxDeltas + 2; i++) {
+            final int element = i;
+            client.write(value -> {
+                final int[] next = value == null ? new int[0] : Arrays.copyOf(value, value.length + 1);
+                if (value != null) next[value.length] = element;
+                return next;
+            });
+            final int expectedFrames = i <= maxDeltas + 1 ? i : 1;
+            assertEquals("write "+i, expectedFrames, frames(latest(replicas).getValue()));
+        }
+        final int[] expected = new int[maxDeltas + 1];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i + 2;
+        }
+        assertArrayEquals(expected, client.read());
+        // a new client replays the chain from the replicas
+        assertArrayEquals(expected, new RegisterClient<>(REPLICA_IDS, replicas::get, INTS, "register").read());
+    }
+
+    @Test
+    public void testStaleAppendIsRejected() throws Exception {
+        final LocalRegisterReplicaClient replica = new LocalRegisterReplicaClient(0);
+        final byte[] base = DeltaChain.base(new int[]{1, 2}, INTS);
+        final RegisterReplicaState current = new RegisterReplicaState(1, 1, base, new long[]{0}, ReplicaUpdate.UNMODIFIED, 0);
+        assertTrue(replica.putIfAbsent("register", current));
+        final byte[] appended = DeltaChain.append(base, INTS.diff(new int[]{1, 2}, new int[]{1, 2, 3}));
+        final RegisterReplicaState update = new RegisterReplicaState(2, 1, appended, new long[]{0}, ReplicaUpdate.UNMODIFIED, 0);
+        // the ballot matches but the writer's value is longer than the stored one, so its suffix would be misplaced
+        final byte[] stale = DeltaChain.append(appended, INTS.diff(new int[]{1, 2, 3}, new int[]{1, 2, 3, 4}));
+        final RegisterReplicaState staleUpdate = new RegisterReplicaState(2, 1, stale, new long[]{0}, ReplicaUpdate.UNMODIFIED, 0);
+        assertFalse(replica.compareAndAppend("register", staleUpdate, appended.length, current));
+        assertArrayEquals(base, replica.read("register").getValue());
+        // a ballot which doesn't match is rejected even if the length does
+        final RegisterReplicaState otherBallot = new RegisterReplicaState(1, 0, base, new long[]{0}, ReplicaUpdate.UNMODIFIED, 0);
+        assertFalse(replica.compareAndAppend("register", update, base.length, otherBallot));
+        assertTrue(replica.compareAndAppend("register", update, base.length, current));
+        final RegisterReplicaState stored = replica.read("register");
+        assertEquals(2, stored.getProposal());
+        assertArrayEquals(appended, stored.getValue());
+        assertArrayEquals(new int[]{1, 2, 3}, DeltaChain.decode(stored.getValue(), INTS));
+    }
+
+    private static Map<Long, LocalRegisterReplicaClient> replicas() {
+        final Map<Long, LocalRegisterReplicaClient> replicas = new HashMap<>();
+        for (long id : REPLICA_IDS) {
+            replicas.put(id, new LocalRegisterReplicaClient(id));
+        }
+        return replicas;
+    }
+
+    /**
+     * @return the state with the highest accepted proposal, a quorum of the replicas holds it
+     */
+    private static RegisterReplicaState latest(Map<Long, LocalRegisterReplicaClient> replicas) throws Exception {
+        RegisterReplicaState latest = null;
+        for (LocalRegisterReplicaClient replica : replicas.values()) {
+            final RegisterReplicaState state = replica.read("register");
+            if (latest == null || state.getAccepted() > latest.getAccepted()) latest = state;
+        }
+        assertNotNull(latest);
+        return latest;
+    }
+
+    private static int frames(byte[] chain) {
+        final ByteBuffer buffer = ByteBuffer.wrap(chain);
+        int frames = 0;
+        while (buffer.hasRemaining()) {
+            final int length = buffer.getInt();
+            buffer.position(buffer.position() + length);
+            frames++;
+        }
+        return frames;
+    }
+}